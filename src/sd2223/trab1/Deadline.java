@@ -0,0 +1,89 @@
+package sd2223.trab1;
+
+import java.util.function.Supplier;
+
+/**
+ * End-to-end deadline of the request being handled by the current thread.
+ * <p>
+ * Servers take it from the HEADER of the incoming request (REST or SOAP), or start a new one
+ * with the default budget, and clients send the remaining budget in the same header,
+ * shrinking their timeouts and retries to it, so that every hop gives up once it is spent.
+ * The header carries the remaining time in ms rather than an absolute time, so that the
+ * clocks of the servers need not be synchronized.
+ */
+public class Deadline {
+
+    public static final String HEADER = "X-Deadline-Millis";
+
+    // Budget of a request that arrives without a deadline, in ms; 0 for none
+    public static final long DEFAULT_BUDGET = Long.getLong("feeds.deadline", 20000);
+
+    // Remaining time when there is no deadline
+    public static final long NONE = Long.MAX_VALUE;
+
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    private final long expiresAt;
+
+    private Deadline(long budgetMillis) {
+        this.expiresAt = System.nanoTime() + budgetMillis * 1_000_000;
+    }
+
+    /**
+     * Starts the deadline of a request received by a server.
+     *
+     * @param header value of the HEADER of the request, or null if absent
+     */
+    public static void begin(String header) {
+        long budget = DEFAULT_BUDGET;
+        if (header != null)
+            try {
+                budget = Math.max(0, Long.parseLong(header.trim()));
+            } catch (NumberFormatException x) {
+                // ignored: the request gets the default budget
+            }
+        current.set(header != null || budget > 0 ? new Deadline(budget) : null);
+    }
+
+    /**
+     * Ends the deadline of the request handled by this thread.
+     */
+    public static void end() {
+        current.remove();
+    }
+
+    /**
+     * @return the deadline of the request handled by this thread, or null
+     */
+    public static Deadline current() {
+        return current.get();
+    }
+
+    /**
+     * Runs func with the given deadline, for work that continues the request in another thread.
+     */
+    public static <T> T with(Deadline deadline, Supplier<T> func) {
+        Deadline previous = current.get();
+        current.set(deadline);
+        try {
+            return func.get();
+        } finally {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * @return the remaining time of the request handled by this thread, in ms, or NONE
+     */
+    public static long remainingMillis() {
+        Deadline d = current.get();
+        return d == null ? NONE : d.remaining();
+    }
+
+    /**
+     * @return the remaining time, in ms (0 or less once expired)
+     */
+    public long remaining() {
+        return (expiresAt - System.nanoTime()) / 1_000_000;
+    }
+}
@@ -1,11 +1,8 @@
 package sd2223.trab1;
 
-import java.net.*;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.logging.Logger;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * <p>A class interface to perform service discovery based on periodic
@@ -14,6 +11,9 @@ import java.util.logging.Logger;
 
 public interface Discovery {
 
+    // Maximum wait for the URIs of a service when the current request has no Deadline, in ms
+    long LOOKUP_TIMEOUT = Long.getLong("discovery.lookupTimeout", 10000);
+
     /**
      * Used to announce the URI of the given service name.
      *
@@ -24,159 +24,138 @@ public interface Discovery {
     public void announce(String domain, String serviceName, String serviceURI);
 
     /**
-     * Get discovered URIs for a given service name
+     * Used to announce the URI of the given service name, together with its current load.
      *
-     * @param serviceDomain - serviceName and domain (format service.domain)
-     * @param minReplies    - minimum number of requested URIs. Blocks until the number is satisfied.
-     * @return array with the discovered URIs for the given service name.
+     * @param domain      - the domain of the service
+     * @param serviceName - the name of the service
+     * @param serviceURI  - the uri of the service
+     * @param load        - supplies the load of the service, sampled for each announcement
      */
-    public URI[] knownUrisOf(String serviceDomain, int minReplies);
+    public void announce(String domain, String serviceName, String serviceURI, Supplier<Load> load);
 
     /**
-     * Get the instance of the Discovery service
+     * Get the last load announced for a URI of a given service name
      *
-     * @return the singleton instance of the Discovery service
+     * @param serviceDomain - serviceName and domain (format service.domain)
+     * @param uri           - the uri of the service
+     * @return the load, or null if the uri is unknown or announces no load
      */
-    public static Discovery getInstance() {
-        return DiscoveryImpl.getInstance();
-    }
-}
-
-/**
- * Implementation of the multicast discovery service
- */
-class DiscoveryImpl implements Discovery {
-    private static Logger Log = Logger.getLogger(Discovery.class.getName());
+    public Load loadOf(String serviceDomain, URI uri);
 
-    static final int DISCOVERY_RETRY_TIMEOUT = 5000;
-
-    // Alterei o tempo para 10 segundos para se poder interagir na linha de comandos mas isto tem de estar mais baixo (tipo 1 ou 2)
-    static final int DISCOVERY_ANNOUNCE_PERIOD = 1000;
-
-    // The pre-aggreed multicast endpoint assigned to perform discovery.
-    static final InetSocketAddress DISCOVERY_ADDR = new InetSocketAddress("224.0.0.1", 5000);
-
-    // Used separate the two fields that make up a service announcement.
-    private static final String DELIMITER_TAB = "\t";
-
-    // Used separate the domain from the rest
-    private static final String DELIMITER_2_DOTS = ":";
-
-    private static final int MAX_DATAGRAM_SIZE = 65536;
-
-    // Stores the received announcements by serviceName (format service.domain)
-    private Map<String, List<URI>> announcements = new HashMap<>();
+    /**
+     * Load descriptor carried by the announcements of a service.
+     */
+    public static class Load {
+        public final int inFlight;
+        public final int queueDepth;
+        public final int p99Millis;
+
+        /**
+         * @param inFlight   - requests being handled
+         * @param queueDepth - tasks waiting in the server queues
+         * @param p99Millis  - recent 99th percentile of the request latency, in ms
+         */
+        public Load(int inFlight, int queueDepth, int p99Millis) {
+            this.inFlight = inFlight;
+            this.queueDepth = queueDepth;
+            this.p99Millis = p99Millis;
+        }
 
-    private static Discovery singleton;
+        /**
+         * @return the amount of outstanding work, used to compare replicas
+         */
+        public int pressure() {
+            return inFlight + queueDepth;
+        }
 
-    synchronized static Discovery getInstance() {
-        if (singleton == null) {
-            singleton = new DiscoveryImpl();
+        @Override
+        public String toString() {
+            return "Load [inFlight=" + inFlight + ", queueDepth=" + queueDepth + ", p99Millis=" + p99Millis + "]";
         }
-        return singleton;
     }
 
-    private DiscoveryImpl() {
-        this.startListener();
-    }
+    /**
+     * Get discovered URIs for a given service name
+     *
+     * @param serviceDomain - serviceName and domain (format service.domain)
+     * @param minReplies    - minimum number of requested URIs. Blocks until the number is satisfied.
+     * @return array with the discovered URIs for the given service name.
+     */
+    public URI[] knownUrisOf(String serviceDomain, int minReplies);
 
-    @Override
-    public void announce(String domain, String serviceName, String serviceURI) {
-        Log.info(String.format("Starting Discovery announcements on: %s for: %s -> %s\n", DISCOVERY_ADDR, serviceName + "." + domain,
-                serviceURI));
-        var pktBytes = String.format("%s%s%s%s%s", domain, DELIMITER_2_DOTS, serviceName, DELIMITER_TAB, serviceURI).getBytes();
-        var pkt = new DatagramPacket(pktBytes, pktBytes.length, DISCOVERY_ADDR);
-
-        // start thread to send periodic announcements
-        new Thread(() -> {
-            try (var ds = new DatagramSocket()) {
-                while (true) {
-                    try {
-                        ds.send(pkt);
-                        Thread.sleep(DISCOVERY_ANNOUNCE_PERIOD);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
-    }
+    /**
+     * Get discovered URIs for a given service name, without blocking the caller
+     *
+     * @param serviceDomain - serviceName and domain (format service.domain)
+     * @param minReplies    - minimum number of requested URIs. The future completes as soon as the number is satisfied.
+     * @param timeout       - maximum time to wait in ms. If the number is not satisfied in time,
+     *                      the future completes exceptionally with a TimeoutException.
+     * @return future of the array with the discovered URIs for the given service name.
+     */
+    public CompletableFuture<URI[]> knownUrisOfAsync(String serviceDomain, int minReplies, long timeout);
 
+    /**
+     * Like knownUrisOfAsync, waiting at most the remaining Deadline of the current request,
+     * or LOOKUP_TIMEOUT if it has none. A service that is not announced may never be found.
+     *
+     * @param serviceDomain - serviceName and domain (format service.domain)
+     * @param minReplies    - minimum number of requested URIs.
+     * @return future of the array with the discovered URIs for the given service name.
+     */
+    public default CompletableFuture<URI[]> knownUrisOfAsync(String serviceDomain, int minReplies) {
+        long timeout = Math.max(0, Math.min(LOOKUP_TIMEOUT, Deadline.remainingMillis()));
+        return knownUrisOfAsync(serviceDomain, minReplies, timeout);
+    }
 
-    @Override
-    public URI[] knownUrisOf(String serviceDomain, int minEntries) {
-        // Wait for a minimum number of replies
-        while (announcements.get(serviceDomain) == null) {
-            try {
-                Thread.sleep(DISCOVERY_RETRY_TIMEOUT);
-            } catch (InterruptedException e) {
-                // ignore
-            }
-        }
+    /**
+     * Receives the changes in the set of URIs announced for a service.
+     * Callbacks run in the discovery threads and must not block.
+     */
+    public interface MembershipListener {
+
+        /**
+         * A URI started being announced for the service.
+         *
+         * @param serviceDomain - serviceName and domain (format service.domain)
+         * @param uri           - the new uri
+         */
+        void uriAdded(String serviceDomain, URI uri);
+
+        /**
+         * A URI stopped being announced for the service and expired.
+         *
+         * @param serviceDomain - serviceName and domain (format service.domain)
+         * @param uri           - the expired uri
+         */
+        void uriRemoved(String serviceDomain, URI uri);
+    }
 
-        while (announcements.get(serviceDomain).size() < minEntries) {
-            try {
-                Thread.sleep(DISCOVERY_RETRY_TIMEOUT);
-            } catch (InterruptedException e) {
-                // ignore
-            }
-        }
+    /**
+     * Registers a listener for the changes in the URIs of a service.
+     *
+     * @param serviceDomain - serviceName and domain (format service.domain)
+     * @param listener      - the listener
+     */
+    public void subscribe(String serviceDomain, MembershipListener listener);
 
-        /*
-        while (announcements.getOrDefault(serviceDomain, Collections.emptyList()).size() < minEntries) {
-            try {
-                Thread.sleep(DISCOVERY_RETRY_TIMEOUT);
-            } catch (InterruptedException e) {
-            }
-        }*/
-
-        // Return the known URIs for the service name
-        //   List<URI> uris = announcements.getOrDefault(serviceName, Collections.emptyList());
-        List<URI> uris = announcements.get(serviceDomain);
-
-        URI[] array = new URI[uris.size()];
-        uris.toArray(array);
-        return array;
-    }
+    /**
+     * Removes a listener registered with subscribe.
+     *
+     * @param serviceDomain - serviceName and domain (format service.domain)
+     * @param listener      - the listener
+     */
+    public void unsubscribe(String serviceDomain, MembershipListener listener);
 
-    private void startListener() {
-        new Thread(() -> {
-            try (var ms = new MulticastSocket(DISCOVERY_ADDR.getPort())) {
-                ms.joinGroup(DISCOVERY_ADDR, NetworkInterface.getByInetAddress(InetAddress.getLocalHost()));
-                for (; ; ) {
-                    try {
-                        var pkt = new DatagramPacket(new byte[MAX_DATAGRAM_SIZE], MAX_DATAGRAM_SIZE);
-                        ms.receive(pkt);
-
-                        var msg = new String(pkt.getData(), 0, pkt.getLength());
-                        //   Log.info(String.format("Received: %s", msg));
-
-                        var parts = msg.split(DELIMITER_TAB);
-
-                        var parts1 = parts[0].split(DELIMITER_2_DOTS);
-
-                        var domain = parts1[0];
-                        var service = parts1[1];
-
-                        var serviceDomain = service + "." + domain;
-                        URI uri = URI.create(parts[1]);
-
-                        List<URI> list = announcements.get(serviceDomain);
-                        if (list == null) {
-                            list = new LinkedList<>();
-                            announcements.put(serviceDomain, list);
-                        }
-                        list.add(uri);
-                        //announcements.computeIfAbsent(serviceDomain, k -> new ArrayList<>()).add(uri);
-                    } catch (Exception x) {
-                        x.printStackTrace();
-                    }
-                }
-            } catch (Exception x) {
-                x.printStackTrace();
-            }
-        }).start();
+    /**
+     * Get the instance of the Discovery service
+     *
+     * Uses the static file-based implementation if feeds.props sets DISCOVERY_MODE=file,
+     * and multicast discovery otherwise.
+     *
+     * @return the singleton instance of the Discovery service
+     */
+    public static Discovery getInstance() {
+        Discovery fromFile = FileDiscovery.getInstance();
+        return fromFile != null ? fromFile : DiscoveryImpl.getInstance();
     }
-}
\ No newline at end of file
+}
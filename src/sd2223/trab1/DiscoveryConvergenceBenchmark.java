@@ -0,0 +1,176 @@
+package sd2223.trab1;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of how long N services take to discover each other, with a fixed announce period
+ * versus the adaptive one (a burst at DISCOVERY_BURST_PERIOD that doubles up to
+ * DISCOVERY_ANNOUNCE_PERIOD, restarted whenever a new service is seen).
+ * <p>
+ * Every simulated service is a DiscoveryImpl of its own, with its real announcer and registry.
+ * Multicast is replaced by unicast on loopback: each service has a DatagramChannel, its
+ * announcements are sent to every service that has already started (itself included, as with
+ * multicast loopback) and the received packets go to its handleAnnouncement. The services start
+ * one after the other, startGap apart; the convergence time is measured from the start of the
+ * last one until knownUrisOf returns all the services in every one of them. The cost is reported
+ * as the announcements sent until then and, once the periods have settled, the announcements
+ * sent per second.
+ * <p>
+ * java -cp target/classes:DEPS sd2223.trab1.DiscoveryConvergenceBenchmark [services] [startGapMs] [trials]
+ */
+public class DiscoveryConvergenceBenchmark {
+
+    // The fixed period used before the adaptive announcements
+    private static final int LEGACY_PERIOD = 1000;
+
+    private static final String DOMAIN = "bench";
+    private static final String SERVICE = "feeds";
+
+    public static void main(String[] args) throws Exception {
+        int services = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        long startGap = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        int trials = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Logger.getLogger(Discovery.class.getName()).setLevel(Level.WARNING);
+
+        System.out.printf("services=%d startGap=%dms trials=%d%n", services, startGap, trials);
+        report("fixed " + LEGACY_PERIOD + "ms", services, startGap, trials, LEGACY_PERIOD, LEGACY_PERIOD);
+        report("fixed " + DiscoveryImpl.DISCOVERY_ANNOUNCE_PERIOD + "ms", services, startGap, trials,
+                DiscoveryImpl.DISCOVERY_ANNOUNCE_PERIOD, DiscoveryImpl.DISCOVERY_ANNOUNCE_PERIOD);
+        report("adaptive", services, startGap, trials,
+                DiscoveryImpl.DISCOVERY_BURST_PERIOD, DiscoveryImpl.DISCOVERY_ANNOUNCE_PERIOD);
+    }
+
+    private static void report(String name, int services, long startGap, int trials, int burst, int steady) throws Exception {
+        long total = 0, worst = 0, packets = 0;
+        double rate = 0;
+        for (int t = 0; t < trials; t++) {
+            var trial = new Trial(services, burst, steady);
+            long ms = trial.run(startGap);
+            total += ms;
+            worst = Math.max(worst, ms);
+            packets += trial.sent.get();
+            rate += trial.steadyRate(steady);
+            trial.close();
+        }
+        System.out.printf("%-13s convergence avg=%5dms max=%5dms  announcements until converged=%4d  steady=%5.1f announcements/s%n",
+                name, total / trials, worst, packets / trials, rate / trials);
+    }
+
+    /**
+     * One run: the services and the thread that receives their announcements.
+     */
+    private static class Trial {
+        final List<Service> services = new ArrayList<>();
+        final AtomicLong sent = new AtomicLong();
+        final Selector selector;
+        Thread receiver;
+
+        Trial(int n, int burst, int steady) throws Exception {
+            this.selector = Selector.open();
+            for (int i = 0; i < n; i++) {
+                var ch = DatagramChannel.open();
+                ch.bind(new InetSocketAddress("127.0.0.1", 0));
+                ch.configureBlocking(false);
+                var s = new Service(ch, burst, steady);
+                ch.register(selector, SelectionKey.OP_READ, s);
+                services.add(s);
+            }
+        }
+
+        long run(long startGap) throws Exception {
+            receiver = new Thread(this::receive);
+            receiver.setDaemon(true);
+            receiver.start();
+
+            // Completed by the registry of each service once it knows all of them
+            var converged = services.stream()
+                    .map(s -> s.discovery.knownUrisOfAsync(SERVICE + "." + DOMAIN, services.size(), 60_000))
+                    .toArray(CompletableFuture<?>[]::new);
+
+            long lastStart = 0;
+            for (Service s : services) {
+                lastStart = System.nanoTime();
+                s.started = true;
+                s.discovery.announce(DOMAIN, SERVICE, "http://" + s.address.getHostString() + ":" + s.address.getPort() + "/rest");
+                Thread.sleep(startGap);
+            }
+            CompletableFuture.allOf(converged).join();
+            return (System.nanoTime() - lastStart) / 1_000_000;
+        }
+
+        /**
+         * Announcements per second, measured after the burst has had time to back off to the steady period.
+         */
+        double steadyRate(int steady) throws Exception {
+            Thread.sleep(2L * steady);
+            long before = sent.get();
+            Thread.sleep(2L * steady);
+            return (sent.get() - before) * 1000.0 / (2L * steady);
+        }
+
+        void close() throws Exception {
+            for (Service s : services)
+                s.discovery.shutdown();
+            receiver.interrupt();
+            selector.close();
+            for (Service s : services)
+                s.ch.close();
+        }
+
+        void receive() {
+            var buf = ByteBuffer.allocateDirect(1024);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    selector.select();
+                    for (var it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                        var key = it.next();
+                        it.remove();
+                        var s = (Service) key.attachment();
+                        buf.clear();
+                        if (s.ch.receive(buf) == null || !s.started)
+                            continue;
+                        buf.flip();
+                        s.discovery.handleAnnouncement(buf);
+                    }
+                }
+            } catch (Exception x) {
+                // closed at the end of the trial
+            }
+        }
+
+        /**
+         * Sends an announcement of from to every service that has started.
+         */
+        void unicast(Service from, byte[] announcement) throws IOException {
+            for (Service s : services)
+                if (s.started)
+                    from.ch.send(ByteBuffer.wrap(announcement), s.address);
+            sent.incrementAndGet();
+        }
+
+        class Service {
+            final DatagramChannel ch;
+            final InetSocketAddress address;
+            final DiscoveryImpl discovery;
+            volatile boolean started;
+
+            Service(DatagramChannel ch, int burst, int steady) throws Exception {
+                this.ch = ch;
+                this.address = (InetSocketAddress) ch.getLocalAddress();
+                this.discovery = new DiscoveryImpl(announcement -> unicast(this, announcement), burst, steady);
+            }
+        }
+    }
+}
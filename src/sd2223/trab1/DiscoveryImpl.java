@@ -0,0 +1,548 @@
+package sd2223.trab1;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of the multicast discovery service
+ */
+class DiscoveryImpl implements Discovery {
+    private static Logger Log = Logger.getLogger(Discovery.class.getName());
+
+    // Steady-state announce period, reached once the set of known services stops changing.
+    static final int DISCOVERY_ANNOUNCE_PERIOD = 2000;
+
+    // Announce period right after startup or a topology change; it doubles after each announcement.
+    static final int DISCOVERY_BURST_PERIOD = 100;
+
+    // A URI that has not been announced for this long is considered dead and forgotten.
+    static final int DISCOVERY_EXPIRY = 3 * DISCOVERY_ANNOUNCE_PERIOD;
+
+    // How often expired URIs are swept.
+    static final int DISCOVERY_SWEEP_PERIOD = 1000;
+
+    // The pre-aggreed multicast endpoint assigned to perform discovery.
+    static final InetSocketAddress DISCOVERY_ADDR = new InetSocketAddress("224.0.0.1", 5000);
+
+    // Used separate the two fields that make up a service announcement.
+    private static final String DELIMITER_TAB = "\t";
+
+    // Used separate the domain from the rest
+    private static final String DELIMITER_2_DOTS = ":";
+
+    // Used to separate the values of the load descriptor
+    private static final String DELIMITER_COMMA = ",";
+
+    // The same delimiters, as compared against the raw bytes of a received announcement.
+    private static final byte TAB_BYTE = '\t';
+    private static final byte COLON_BYTE = ':';
+    private static final byte COMMA_BYTE = ',';
+
+    private static final int MAX_DATAGRAM_SIZE = 65536;
+
+    // Stores the announced URIs by serviceName (format service.domain), each URI once
+    private final Map<String, Map<URI, Entry>> registry = new ConcurrentHashMap<>();
+
+    // Requests waiting for a minimum number of URIs, by serviceName (format service.domain)
+    private Map<String, List<Waiter>> waiters = new HashMap<>();
+
+    // Listeners of membership changes, by serviceName (format service.domain)
+    private final Map<String, Set<MembershipListener>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * An announced URI, with the time it was first and last announced.
+     */
+    private static class Entry {
+        final URI uri;
+        final long firstSeen;
+        volatile long lastSeen;
+        // Last announced load; inFlight < 0 if the service announces no load
+        volatile int inFlight = -1, queueDepth, p99Millis;
+
+        Entry(URI uri, long now) {
+            this.uri = uri;
+            this.firstSeen = now;
+            this.lastSeen = now;
+        }
+
+        void setLoad(int inFlight, int queueDepth, int p99Millis) {
+            this.queueDepth = queueDepth;
+            this.p99Millis = p99Millis;
+            this.inFlight = inFlight;
+        }
+    }
+
+    // Oldest replicas first, so that uris[0] stays the same while that replica is alive
+    private static final Comparator<Entry> BY_FIRST_SEEN = Comparator.comparingLong(e -> e.firstSeen);
+
+    // Runs all the announcements and the expiry sweep; the announcers' state is only touched by this thread
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "discovery-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // The services announced by this process
+    private final List<Announcer> announcers = new CopyOnWriteArrayList<>();
+
+    private DatagramSocket sender;
+
+    /**
+     * Where the announcements of this process are sent, instead of the multicast group (used by the benchmarks).
+     */
+    interface AnnouncementSink {
+        void send(byte[] announcement) throws IOException;
+    }
+
+    // null to multicast the announcements
+    private final AnnouncementSink sink;
+
+    // The burst and steady-state announce periods of this instance
+    private final int burstPeriod, announcePeriod;
+
+    /**
+     * The periodic announcement of a service. Starts at the burst period and backs off
+     * exponentially to the steady-state period; a topology change restarts the burst.
+     */
+    private class Announcer implements Runnable {
+        final String announcement;
+        final Supplier<Load> load;
+        long period = burstPeriod;
+        ScheduledFuture<?> next;
+
+        Announcer(String announcement, Supplier<Load> load) {
+            this.announcement = announcement;
+            this.load = load;
+        }
+
+        @Override
+        public void run() {
+            try {
+                var pktBytes = withLoad(announcement, load).getBytes();
+                if (sink != null)
+                    sink.send(pktBytes);
+                else
+                    sender.send(new DatagramPacket(pktBytes, pktBytes.length, DISCOVERY_ADDR));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            next = scheduler.schedule(this, period, TimeUnit.MILLISECONDS);
+            period = Math.min(period * 2, announcePeriod);
+        }
+
+        void burst() {
+            if (period == burstPeriod) return;
+            period = burstPeriod;
+            if (next != null && next.cancel(false))
+                next = scheduler.schedule(this, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A pending request for at least minReplies URIs of a service.
+     */
+    private static class Waiter {
+        final int minReplies;
+        final CompletableFuture<URI[]> future = new CompletableFuture<>();
+
+        Waiter(int minReplies) {
+            this.minReplies = minReplies;
+        }
+    }
+
+    private static Discovery singleton;
+
+    synchronized static Discovery getInstance() {
+        if (singleton == null) {
+            singleton = new DiscoveryImpl();
+        }
+        return singleton;
+    }
+
+    private DiscoveryImpl() {
+        this(true);
+    }
+
+    /**
+     * Without the listener, the announcements are only the ones given to handleAnnouncement (used by the benchmarks).
+     */
+    DiscoveryImpl(boolean listen) {
+        this(listen, null, DISCOVERY_BURST_PERIOD, DISCOVERY_ANNOUNCE_PERIOD);
+    }
+
+    /**
+     * Without the listener, sending the announcements to sink, with the given periods;
+     * with burstPeriod == announcePeriod the announcements have a fixed period (used by the benchmarks).
+     */
+    DiscoveryImpl(AnnouncementSink sink, int burstPeriod, int announcePeriod) {
+        this(false, sink, burstPeriod, announcePeriod);
+    }
+
+    private DiscoveryImpl(boolean listen, AnnouncementSink sink, int burstPeriod, int announcePeriod) {
+        this.sink = sink;
+        this.burstPeriod = burstPeriod;
+        this.announcePeriod = announcePeriod;
+        if (listen)
+            this.startListener();
+        scheduler.scheduleWithFixedDelay(this::expire, DISCOVERY_EXPIRY, DISCOVERY_SWEEP_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void announce(String domain, String serviceName, String serviceURI) {
+        announce(domain, serviceName, serviceURI, null);
+    }
+
+    @Override
+    public void announce(String domain, String serviceName, String serviceURI, Supplier<Load> load) {
+        Log.info(String.format("Starting Discovery announcements on: %s for: %s -> %s\n", DISCOVERY_ADDR, serviceName + "." + domain,
+                serviceURI));
+        var announcement = String.format("%s%s%s%s%s", domain, DELIMITER_2_DOTS, serviceName, DELIMITER_TAB, serviceURI);
+
+        synchronized (this) {
+            if (sink == null && sender == null)
+                try {
+                    sender = new DatagramSocket();
+                } catch (SocketException e) {
+                    e.printStackTrace();
+                    return;
+                }
+        }
+        // schedule the periodic announcements, starting now
+        Announcer a = new Announcer(announcement, load);
+        announcers.add(a);
+        scheduler.execute(a);
+    }
+
+    /**
+     * Stops the announcements and the expiry sweep of this instance (used by the benchmarks).
+     */
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Restarts the burst of every announcement, so that the services that just joined learn about ours quickly.
+     */
+    private void topologyChanged() {
+        if (!announcers.isEmpty())
+            scheduler.execute(() -> announcers.forEach(Announcer::burst));
+    }
+
+
+    /**
+     * Appends the load descriptor to an announcement, as a third field in the format inFlight,queueDepth,p99Millis.
+     */
+    private static String withLoad(String announcement, Supplier<Load> load) {
+        Load l = load == null ? null : load.get();
+        if (l == null) return announcement;
+        return announcement + DELIMITER_TAB + l.inFlight + DELIMITER_COMMA + l.queueDepth + DELIMITER_COMMA + l.p99Millis;
+    }
+
+    @Override
+    public Load loadOf(String serviceDomain, URI uri) {
+        Map<URI, Entry> entries = registry.get(serviceDomain);
+        Entry e = entries == null ? null : entries.get(uri);
+        if (e == null || e.inFlight < 0) return null;
+        return new Load(e.inFlight, e.queueDepth, e.p99Millis);
+    }
+
+    @Override
+    public URI[] knownUrisOf(String serviceDomain, int minEntries) {
+        // Wait for a minimum number of replies; the listener wakes us up as soon as they arrive
+        return waitFor(serviceDomain, minEntries).future.join();
+    }
+
+    @Override
+    public CompletableFuture<URI[]> knownUrisOfAsync(String serviceDomain, int minEntries, long timeout) {
+        Waiter w = waitFor(serviceDomain, minEntries);
+        if (!w.future.isDone())
+            w.future.orTimeout(timeout, TimeUnit.MILLISECONDS)
+                    .whenComplete((uris, x) -> removeWaiter(serviceDomain, w));
+        return w.future;
+    }
+
+    /**
+     * Returns a waiter that is already complete if the minimum number of URIs is known,
+     * or that is registered to be completed by the listener when it is.
+     */
+    private Waiter waitFor(String serviceDomain, int minEntries) {
+        Waiter w = new Waiter(minEntries);
+
+        // Fast path, without locking: the URIs are already known
+        URI[] uris = liveUris(serviceDomain);
+        if (uris.length >= minEntries) {
+            w.future.complete(uris);
+            return w;
+        }
+
+        synchronized (this) {
+            // Checked again under the lock, so that an announcement cannot be missed
+            uris = liveUris(serviceDomain);
+            if (uris.length >= minEntries)
+                w.future.complete(uris);
+            else
+                waiters.computeIfAbsent(serviceDomain, k -> new LinkedList<>()).add(w);
+        }
+        return w;
+    }
+
+    @Override
+    public void subscribe(String serviceDomain, MembershipListener listener) {
+        listeners.computeIfAbsent(serviceDomain, k -> new CopyOnWriteArraySet<>()).add(listener);
+    }
+
+    @Override
+    public void unsubscribe(String serviceDomain, MembershipListener listener) {
+        Set<MembershipListener> set = listeners.get(serviceDomain);
+        if (set != null)
+            set.remove(listener);
+    }
+
+    private void notifyListeners(String serviceDomain, URI uri, boolean added) {
+        Set<MembershipListener> set = listeners.get(serviceDomain);
+        if (set == null) return;
+        for (MembershipListener l : set)
+            try {
+                if (added)
+                    l.uriAdded(serviceDomain, uri);
+                else
+                    l.uriRemoved(serviceDomain, uri);
+            } catch (Exception x) {
+                x.printStackTrace();
+            }
+    }
+
+    /**
+     * Returns the URIs of the service that have not expired, oldest first.
+     */
+    private URI[] liveUris(String serviceDomain) {
+        Map<URI, Entry> entries = registry.get(serviceDomain);
+        if (entries == null) return new URI[0];
+        long oldest = System.currentTimeMillis() - DISCOVERY_EXPIRY;
+        return entries.values().stream()
+                .filter(e -> e.lastSeen >= oldest)
+                .sorted(BY_FIRST_SEEN)
+                .map(e -> e.uri)
+                .toArray(URI[]::new);
+    }
+
+    /**
+     * Forgets the URIs that have not been announced recently.
+     */
+    private void expire() {
+        long oldest = System.currentTimeMillis() - DISCOVERY_EXPIRY;
+        registry.forEach((serviceDomain, entries) -> {
+            for (Entry e : entries.values())
+                if (e.lastSeen < oldest && entries.remove(e.uri, e)) {
+                    notifyListeners(serviceDomain, e.uri, false);
+                    topologyChanged();
+                }
+        });
+    }
+
+    private synchronized void removeWaiter(String serviceDomain, Waiter w) {
+        List<Waiter> list = waiters.get(serviceDomain);
+        if (list != null) {
+            list.remove(w);
+            if (list.isEmpty())
+                waiters.remove(serviceDomain);
+        }
+    }
+
+    /**
+     * Records an announcement and completes the waiters that are now satisfied.
+     * The waiters are completed outside the lock, as completing a future runs its dependent actions.
+     */
+    void addAnnouncement(String serviceDomain, URI uri, int inFlight, int queueDepth, int p99Millis) {
+        long now = System.currentTimeMillis();
+        Map<URI, Entry> entries = registry.computeIfAbsent(serviceDomain, k -> new ConcurrentHashMap<>());
+
+        // A repeated announcement only refreshes the entry
+        Entry e = entries.get(uri);
+        if (e != null && e.lastSeen >= now - DISCOVERY_EXPIRY) {
+            e.setLoad(inFlight, queueDepth, p99Millis);
+            e.lastSeen = now;
+            return;
+        }
+        e = new Entry(uri, now);
+        e.setLoad(inFlight, queueDepth, p99Millis);
+        Entry old = entries.put(uri, e);
+        if (old != null)
+            notifyListeners(serviceDomain, uri, false); // expired, but not yet swept
+        notifyListeners(serviceDomain, uri, true);
+        topologyChanged();
+
+        List<Waiter> ready = new LinkedList<>();
+        URI[] array = null;
+        synchronized (this) {
+            List<Waiter> pending = waiters.get(serviceDomain);
+            if (pending != null) {
+                array = liveUris(serviceDomain);
+                for (var it = pending.iterator(); it.hasNext(); ) {
+                    Waiter w = it.next();
+                    if (array.length >= w.minReplies) {
+                        ready.add(w);
+                        it.remove();
+                    }
+                }
+                if (pending.isEmpty())
+                    waiters.remove(serviceDomain);
+            }
+        }
+        for (Waiter w : ready)
+            w.future.complete(array);
+    }
+
+    private void startListener() {
+        new Thread(() -> {
+            try (var ch = DatagramChannel.open(StandardProtocolFamily.INET)) {
+                ch.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                ch.bind(new InetSocketAddress(DISCOVERY_ADDR.getPort()));
+                ch.join(DISCOVERY_ADDR.getAddress(), multicastInterface());
+
+                // One buffer for every packet: nothing is allocated per received announcement
+                var buf = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+                for (; ; ) {
+                    try {
+                        buf.clear();
+                        ch.receive(buf);
+                        buf.flip();
+                        handleAnnouncement(buf);
+                    } catch (Exception x) {
+                        x.printStackTrace();
+                    }
+                }
+            } catch (Exception x) {
+                x.printStackTrace();
+            }
+        }).start();
+    }
+
+    /**
+     * The interface of the local host address or, if it has none, the first multicast capable interface that is up.
+     */
+    private static NetworkInterface multicastInterface() throws Exception {
+        var ni = NetworkInterface.getByInetAddress(InetAddress.getLocalHost());
+        if (ni != null) return ni;
+        for (var it = NetworkInterface.getNetworkInterfaces().asIterator(); it.hasNext(); ) {
+            ni = it.next();
+            if (ni.isUp() && ni.supportsMulticast()) return ni;
+        }
+        throw new SocketException("No multicast interface available");
+    }
+
+    /**
+     * An announcement already parsed, kept with its raw bytes so that a repeated
+     * announcement can be recognized without decoding it again.
+     */
+    private static class ParsedAnnouncement {
+        final byte[] raw;
+        final String serviceDomain;
+        final URI uri;
+
+        ParsedAnnouncement(byte[] raw, String serviceDomain, URI uri) {
+            this.raw = raw;
+            this.serviceDomain = serviceDomain;
+            this.uri = uri;
+        }
+    }
+
+    // Recently parsed announcements, indexed by the hash of their bytes (size must be a power of 2)
+    private static final int RECENT_ANNOUNCEMENTS = 256;
+    private final ParsedAnnouncement[] recent = new ParsedAnnouncement[RECENT_ANNOUNCEMENTS];
+
+    /**
+     * Handles an announcement in the format domain:service\turi[\tinFlight,queueDepth,p99Millis],
+     * between the position and the limit of buf.
+     */
+    void handleAnnouncement(ByteBuffer buf) {
+        int start = buf.position(), end = buf.limit();
+
+        // The announcement ends at the second tab, if there is one
+        int tabs = 0, hash = 1, i;
+        for (i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (b == TAB_BYTE && ++tabs == 2) break;
+            hash = 31 * hash + b;
+        }
+        int len = i - start;
+
+        int slot = (hash ^ (hash >>> 16)) & (RECENT_ANNOUNCEMENTS - 1);
+        ParsedAnnouncement p = recent[slot];
+        if (p == null || !sameBytes(p.raw, buf, start, len)) {
+            p = parseAnnouncement(buf, start, len);
+            if (p == null) return;
+            recent[slot] = p;
+        }
+
+        // Load descriptor, parsed in place; inFlight < 0 if absent
+        int[] load = loadValues;
+        load[0] = -1;
+        load[1] = load[2] = 0;
+        if (i < end) {
+            int field = 0, value = 0;
+            for (int j = i + 1; j < end && field < load.length; j++) {
+                byte b = buf.get(j);
+                if (b >= '0' && b <= '9')
+                    value = value * 10 + (b - '0');
+                else if (b == COMMA_BYTE) {
+                    load[field++] = value;
+                    value = 0;
+                } else break;
+            }
+            if (field < load.length) load[field] = value;
+        }
+        addAnnouncement(p.serviceDomain, p.uri, load[0], load[1], load[2]);
+    }
+
+    // Scratch space for the load descriptor, only used by the listener thread
+    private final int[] loadValues = new int[3];
+
+    private static boolean sameBytes(byte[] raw, ByteBuffer buf, int start, int len) {
+        if (raw.length != len) return false;
+        for (int i = 0; i < len; i++)
+            if (raw[i] != buf.get(start + i)) return false;
+        return true;
+    }
+
+    /**
+     * Parses domain:service\turi, or returns null if the bytes are not an announcement.
+     */
+    private static ParsedAnnouncement parseAnnouncement(ByteBuffer buf, int start, int len) {
+        byte[] raw = new byte[len];
+        buf.get(start, raw);
+
+        int colon = -1, tab = -1;
+        for (int i = 0; i < len && tab < 0; i++)
+            if (raw[i] == COLON_BYTE && colon < 0) colon = i;
+            else if (raw[i] == TAB_BYTE) tab = i;
+        if (colon < 0 || tab < colon) {
+            Log.fine("Ignoring malformed announcement");
+            return null;
+        }
+
+        var domain = new String(raw, 0, colon, StandardCharsets.UTF_8);
+        var service = new String(raw, colon + 1, tab - colon - 1, StandardCharsets.UTF_8);
+        var uri = URI.create(new String(raw, tab + 1, len - tab - 1, StandardCharsets.UTF_8));
+        return new ParsedAnnouncement(raw, service + "." + domain, uri);
+    }
+}
@@ -0,0 +1,92 @@
+package sd2223.trab1;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Microbenchmark of the discovery listener: announcements handled per second and bytes
+ * allocated per announcement, without the network (multicast is not needed).
+ * <p>
+ * The current listener copies every packet into one reusable direct buffer and hands it to
+ * DiscoveryImpl.handleAnnouncement. The legacy one is emulated as it was: a new 64KB array per
+ * packet, a String of the whole packet, split on the tab and on the colon, and URI.create; the
+ * load descriptor is split on the commas. Both record into the same registry through
+ * addAnnouncement, so only the receive and decode paths differ.
+ * <p>
+ * java -cp target/classes:DEPS sd2223.trab1.DiscoveryParseBenchmark [services] [packets]
+ */
+public class DiscoveryParseBenchmark {
+
+    private static final int MAX_DATAGRAM_SIZE = 65536;
+
+    public static void main(String[] args) {
+        int services = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int packets = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+        byte[][] announcements = new byte[services][];
+        for (int i = 0; i < services; i++)
+            announcements[i] = String.format("domain%d:feeds\thttp://10.0.0.%d:8080/rest\t%d,%d,%d",
+                    i % 4, i + 1, i % 7, i % 3, 10 + i).getBytes(StandardCharsets.UTF_8);
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        System.out.printf("services=%d packets=%d%n", services, packets);
+
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1; // the first round is the warm-up
+            measure(report, threads, "current", packets, current(announcements));
+            measure(report, threads, "legacy ", packets, legacy(announcements));
+        }
+    }
+
+    private static Runnable current(byte[][] announcements) {
+        var discovery = new DiscoveryImpl(false);
+        var buf = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        var next = new int[1];
+        return () -> {
+            byte[] pkt = announcements[next[0]++ % announcements.length];
+            buf.clear();
+            buf.put(pkt);
+            buf.flip();
+            discovery.handleAnnouncement(buf);
+        };
+    }
+
+    private static Runnable legacy(byte[][] announcements) {
+        var discovery = new DiscoveryImpl(false);
+        var next = new int[1];
+        return () -> {
+            byte[] pkt = announcements[next[0]++ % announcements.length];
+            byte[] data = new byte[MAX_DATAGRAM_SIZE];
+            System.arraycopy(pkt, 0, data, 0, pkt.length);
+
+            var msg = new String(data, 0, pkt.length);
+            var parts = msg.split("\t");
+            var parts1 = parts[0].split(":");
+            var serviceDomain = parts1[1] + "." + parts1[0];
+            URI uri = URI.create(parts[1]);
+            int inFlight = -1, queueDepth = 0, p99Millis = 0;
+            if (parts.length > 2) {
+                var load = parts[2].split(",");
+                inFlight = Integer.parseInt(load[0]);
+                queueDepth = Integer.parseInt(load[1]);
+                p99Millis = Integer.parseInt(load[2]);
+            }
+            discovery.addAnnouncement(serviceDomain, uri, inFlight, queueDepth, p99Millis);
+        };
+    }
+
+    private static void measure(boolean report, com.sun.management.ThreadMXBean threads, String name, int packets, Runnable handle) {
+        long tid = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        for (int i = 0; i < packets; i++)
+            handle.run();
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(tid) - allocated;
+        if (report)
+            System.out.printf("%s  %,12.0f packets/s  %,10.1f bytes allocated/packet%n",
+                    name, packets * 1e9 / elapsed, (double) allocated / packets);
+    }
+}
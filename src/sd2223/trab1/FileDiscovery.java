@@ -0,0 +1,251 @@
+package sd2223.trab1;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Static discovery service: the URIs of each service are read from a local file instead of
+ * being learned from multicast announcements, so that no request waits for an announcement.
+ * <p>
+ * The file is a properties file mapping service.domain to a comma-separated list of URIs, e.g.
+ * <pre>feeds.domain1=http://10.0.0.1:8080/rest,http://10.0.0.2:8080/rest</pre>
+ * It is reloaded whenever it changes. Services announced by this process are also known,
+ * even if they are not listed in the file.
+ * <p>
+ * Selected in feeds.props with DISCOVERY_MODE=file and DISCOVERY_FILE=path.
+ */
+class FileDiscovery implements Discovery {
+    private static Logger Log = Logger.getLogger(Discovery.class.getName());
+
+    // The configuration file that selects the discovery mode
+    static final String PROPS_FILE = "feeds.props";
+    static final String MODE_KEY = "DISCOVERY_MODE";
+    static final String FILE_KEY = "DISCOVERY_FILE";
+    static final String FILE_MODE = "file";
+    static final String DEFAULT_FILE = "discovery.props";
+
+    // How often the file is checked for changes
+    static final int RELOAD_PERIOD = 1000;
+
+    private static final String DELIMITER_COMMA = ",";
+
+    private final File file;
+    private long lastModified = -1;
+
+    // URIs listed in the file and announced by this process, by serviceName (format service.domain)
+    private volatile Map<String, URI[]> fromFile = Collections.emptyMap();
+    private final Map<String, Set<URI>> announced = new ConcurrentHashMap<>();
+
+    // Requests waiting for a minimum number of URIs
+    private final List<Waiter> waiters = new LinkedList<>();
+
+    // Listeners of membership changes, by serviceName (format service.domain)
+    private final Map<String, Set<MembershipListener>> listeners = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "discovery-reloader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static class Waiter {
+        final String serviceDomain;
+        final int minReplies;
+        final CompletableFuture<URI[]> future = new CompletableFuture<>();
+
+        Waiter(String serviceDomain, int minReplies) {
+            this.serviceDomain = serviceDomain;
+            this.minReplies = minReplies;
+        }
+    }
+
+    private static Discovery singleton;
+    private static boolean configured;
+
+    /**
+     * @return the static discovery service, if feeds.props selects it; null otherwise
+     */
+    synchronized static Discovery getInstance() {
+        if (!configured) {
+            configured = true;
+            Properties props = new Properties();
+            try (var in = new FileInputStream(PROPS_FILE)) {
+                props.load(in);
+            } catch (IOException x) {
+                return null;
+            }
+            if (!FILE_MODE.equalsIgnoreCase(props.getProperty(MODE_KEY, "").trim()))
+                return null;
+            singleton = new FileDiscovery(new File(props.getProperty(FILE_KEY, DEFAULT_FILE).trim()));
+        }
+        return singleton;
+    }
+
+    private FileDiscovery(File file) {
+        this.file = file;
+        Log.info(String.format("Using static discovery from: %s\n", file));
+        reload();
+        reloader.scheduleWithFixedDelay(this::reload, RELOAD_PERIOD, RELOAD_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void announce(String domain, String serviceName, String serviceURI) {
+        announce(domain, serviceName, serviceURI, null);
+    }
+
+    @Override
+    public void announce(String domain, String serviceName, String serviceURI, Supplier<Load> load) {
+        String serviceDomain = serviceName + "." + domain;
+        URI uri = URI.create(serviceURI);
+        if (announced.computeIfAbsent(serviceDomain, k -> new CopyOnWriteArraySet<>()).add(uri)) {
+            if (!Arrays.asList(fromFile.getOrDefault(serviceDomain, new URI[0])).contains(uri))
+                notifyListeners(serviceDomain, uri, true);
+            wakeWaiters();
+        }
+    }
+
+    @Override
+    public Load loadOf(String serviceDomain, URI uri) {
+        return null;
+    }
+
+    @Override
+    public URI[] knownUrisOf(String serviceDomain, int minReplies) {
+        return knownUrisOfAsync(serviceDomain, minReplies, Long.MAX_VALUE).join();
+    }
+
+    @Override
+    public CompletableFuture<URI[]> knownUrisOfAsync(String serviceDomain, int minReplies, long timeout) {
+        URI[] uris = urisOf(serviceDomain);
+        if (uris.length >= minReplies)
+            return CompletableFuture.completedFuture(uris);
+
+        Waiter w = new Waiter(serviceDomain, minReplies);
+        synchronized (waiters) {
+            waiters.add(w);
+        }
+        // The file may have changed meanwhile
+        wakeWaiters();
+        if (timeout < Long.MAX_VALUE)
+            w.future.orTimeout(timeout, TimeUnit.MILLISECONDS).whenComplete((u, x) -> {
+                synchronized (waiters) {
+                    waiters.remove(w);
+                }
+            });
+        return w.future;
+    }
+
+    @Override
+    public void subscribe(String serviceDomain, MembershipListener listener) {
+        listeners.computeIfAbsent(serviceDomain, k -> new CopyOnWriteArraySet<>()).add(listener);
+    }
+
+    @Override
+    public void unsubscribe(String serviceDomain, MembershipListener listener) {
+        Set<MembershipListener> set = listeners.get(serviceDomain);
+        if (set != null)
+            set.remove(listener);
+    }
+
+    /**
+     * Returns the URIs listed in the file, followed by the ones announced by this process.
+     */
+    private URI[] urisOf(String serviceDomain) {
+        URI[] listed = fromFile.getOrDefault(serviceDomain, new URI[0]);
+        Set<URI> local = announced.get(serviceDomain);
+        if (local == null || local.isEmpty()) return listed;
+
+        Set<URI> all = new LinkedHashSet<>(Arrays.asList(listed));
+        all.addAll(local);
+        return all.toArray(new URI[0]);
+    }
+
+    /**
+     * Reads the file again if it was modified, and reports the differences.
+     */
+    private void reload() {
+        long modified = file.lastModified();
+        if (modified == lastModified) return;
+        lastModified = modified;
+
+        Properties props = new Properties();
+        if (modified != 0)
+            try (var in = new FileInputStream(file)) {
+                props.load(in);
+            } catch (IOException x) {
+                Log.warning("Error reading discovery file " + file + ": " + x.getMessage());
+                return;
+            }
+
+        Map<String, URI[]> next = new HashMap<>();
+        for (String serviceDomain : props.stringPropertyNames()) {
+            List<URI> uris = new ArrayList<>();
+            for (String u : props.getProperty(serviceDomain).split(DELIMITER_COMMA))
+                if (!u.isBlank())
+                    try {
+                        uris.add(URI.create(u.trim()));
+                    } catch (IllegalArgumentException x) {
+                        Log.warning("Ignoring invalid uri for " + serviceDomain + ": " + u);
+                    }
+            next.put(serviceDomain, uris.toArray(new URI[0]));
+        }
+
+        Map<String, URI[]> previous = fromFile;
+        fromFile = next;
+
+        Set<String> serviceDomains = new HashSet<>(previous.keySet());
+        serviceDomains.addAll(next.keySet());
+        for (String serviceDomain : serviceDomains) {
+            var before = Arrays.asList(previous.getOrDefault(serviceDomain, new URI[0]));
+            var after = Arrays.asList(next.getOrDefault(serviceDomain, new URI[0]));
+            for (URI uri : after)
+                if (!before.contains(uri)) notifyListeners(serviceDomain, uri, true);
+            for (URI uri : before)
+                if (!after.contains(uri)) notifyListeners(serviceDomain, uri, false);
+        }
+        wakeWaiters();
+    }
+
+    /**
+     * Completes the waiters that are now satisfied, outside the lock.
+     */
+    private void wakeWaiters() {
+        List<Waiter> ready = new LinkedList<>();
+        synchronized (waiters) {
+            for (var it = waiters.iterator(); it.hasNext(); ) {
+                Waiter w = it.next();
+                if (urisOf(w.serviceDomain).length >= w.minReplies) {
+                    ready.add(w);
+                    it.remove();
+                }
+            }
+        }
+        for (Waiter w : ready)
+            w.future.complete(urisOf(w.serviceDomain));
+    }
+
+    private void notifyListeners(String serviceDomain, URI uri, boolean added) {
+        Set<MembershipListener> set = listeners.get(serviceDomain);
+        if (set == null) return;
+        for (MembershipListener l : set)
+            try {
+                if (added)
+                    l.uriAdded(serviceDomain, uri);
+                else
+                    l.uriRemoved(serviceDomain, uri);
+            } catch (Exception x) {
+                x.printStackTrace();
+            }
+    }
+}
@@ -0,0 +1,109 @@
+package sd2223.trab1.api;
+
+import java.util.Arrays;
+
+/**
+ * Compact summary of what a domain holds about one author of another domain, used by anti-entropy.
+ * <p>
+ * The messages of the author created after since are grouped in fixed time buckets (creationTime / bucket size),
+ * and each bucket is summarised by an order-independent hash of the ids of its messages. The followers
+ * of the author in the domain are summarised by a single hash.
+ * <p>
+ * In a SyncRepair it only carries the author and the followers recorded by the author's domain.
+ */
+public class AuthorDigest {
+
+    private String author;
+    private long since;
+    private long followersHash;
+    private long[] buckets;
+    private long[] hashes;
+    private String[] followers;
+
+    public AuthorDigest() {
+        this.author = null;
+        this.since = 0;
+        this.followersHash = 0;
+        this.buckets = null;
+        this.hashes = null;
+        this.followers = null;
+    }
+
+    public AuthorDigest(String author, long since, long followersHash, long[] buckets, long[] hashes) {
+        this.author = author;
+        this.since = since;
+        this.followersHash = followersHash;
+        this.buckets = buckets;
+        this.hashes = hashes;
+        this.followers = null;
+    }
+
+    public AuthorDigest(String author, String[] followers) {
+        this();
+        this.author = author;
+        this.followers = followers;
+    }
+
+    /**
+     * @return the author (format user@domain)
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    /**
+     * @return only messages created strictly after this time are summarised
+     */
+    public long getSince() {
+        return since;
+    }
+
+    public void setSince(long since) {
+        this.since = since;
+    }
+
+    public long getFollowersHash() {
+        return followersHash;
+    }
+
+    public void setFollowersHash(long followersHash) {
+        this.followersHash = followersHash;
+    }
+
+    /**
+     * @return the non-empty buckets, in the same order as getHashes
+     */
+    public long[] getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(long[] buckets) {
+        this.buckets = buckets;
+    }
+
+    public long[] getHashes() {
+        return hashes;
+    }
+
+    public void setHashes(long[] hashes) {
+        this.hashes = hashes;
+    }
+
+    public String[] getFollowers() {
+        return followers;
+    }
+
+    public void setFollowers(String[] followers) {
+        this.followers = followers;
+    }
+
+    @Override
+    public String toString() {
+        return "AuthorDigest [author=" + author + ", since=" + since + ", followersHash=" + followersHash
+                + ", buckets=" + Arrays.toString(buckets) + ", followers=" + Arrays.toString(followers) + "]";
+    }
+}
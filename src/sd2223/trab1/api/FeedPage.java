@@ -0,0 +1,48 @@
+package sd2223.trab1.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a page of messages of a feed, together with the opaque cursor
+ * that must be sent back to obtain the following page.
+ */
+public class FeedPage {
+
+    private List<Message> messages;
+    private String next;
+
+    public FeedPage() {
+        this.messages = new ArrayList<>();
+        this.next = null;
+    }
+
+    public FeedPage(List<Message> messages, String next) {
+        this.messages = messages;
+        this.next = next;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * @return the continuation cursor, or null if this is the last page
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    @Override
+    public String toString() {
+        return "FeedPage [messages=" + messages + ", next=" + next + "]";
+    }
+}
@@ -0,0 +1,63 @@
+package sd2223.trab1.api;
+
+import java.util.Arrays;
+
+/**
+ * Represents a message propagated to another domain, together with its author.
+ * The receiving domain delivers it to its own followers of the author.
+ * <p>
+ * Older senders list the users of that domain whose feeds must receive it instead.
+ */
+public class PropagatedMessage {
+
+    private String author;
+    private String[] users;
+    private Message message;
+
+    public PropagatedMessage() {
+        this.author = null;
+        this.users = null;
+        this.message = null;
+    }
+
+    public PropagatedMessage(String author, Message message) {
+        this.author = author;
+        this.users = null;
+        this.message = message;
+    }
+
+    public PropagatedMessage(String[] users, Message message) {
+        this.author = null;
+        this.users = users;
+        this.message = message;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public String[] getUsers() {
+        return users;
+    }
+
+    public void setUsers(String[] users) {
+        this.users = users;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "PropagatedMessage [author=" + author + ", users=" + Arrays.toString(users) + ", message=" + message + "]";
+    }
+}
@@ -0,0 +1,61 @@
+package sd2223.trab1.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Anti-entropy request: the digests of the authors of the receiving domain followed by users of the sender's domain.
+ */
+public class SyncDigest {
+
+    private String domain;
+    private long bucket;
+    private List<AuthorDigest> authors;
+
+    public SyncDigest() {
+        this.domain = null;
+        this.bucket = 0;
+        this.authors = new ArrayList<>();
+    }
+
+    public SyncDigest(String domain, long bucket, List<AuthorDigest> authors) {
+        this.domain = domain;
+        this.bucket = bucket;
+        this.authors = authors;
+    }
+
+    /**
+     * @return the domain of the sender
+     */
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    /**
+     * @return the size of the time buckets, in ms
+     */
+    public long getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(long bucket) {
+        this.bucket = bucket;
+    }
+
+    public List<AuthorDigest> getAuthors() {
+        return authors;
+    }
+
+    public void setAuthors(List<AuthorDigest> authors) {
+        this.authors = authors;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncDigest [domain=" + domain + ", bucket=" + bucket + ", authors=" + authors + "]";
+    }
+}
@@ -0,0 +1,47 @@
+package sd2223.trab1.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Anti-entropy answer: only what differs from a SyncDigest.
+ * <p>
+ * The messages of the time buckets whose hashes differ, and the followers recorded for the authors
+ * whose followers hash differs (including authors that the digest left out).
+ */
+public class SyncRepair {
+
+    private List<PropagatedMessage> messages;
+    private List<AuthorDigest> followers;
+
+    public SyncRepair() {
+        this.messages = new ArrayList<>();
+        this.followers = new ArrayList<>();
+    }
+
+    public SyncRepair(List<PropagatedMessage> messages, List<AuthorDigest> followers) {
+        this.messages = messages;
+        this.followers = followers;
+    }
+
+    public List<PropagatedMessage> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<PropagatedMessage> messages) {
+        this.messages = messages;
+    }
+
+    public List<AuthorDigest> getFollowers() {
+        return followers;
+    }
+
+    public void setFollowers(List<AuthorDigest> followers) {
+        this.followers = followers;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncRepair [messages=" + messages + ", followers=" + followers + "]";
+    }
+}
@@ -0,0 +1,33 @@
+package sd2223.trab1.api.java;
+
+import sd2223.trab1.Deadline;
+import sd2223.trab1.server.ServerThreads;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Runs the default non-blocking variants of Feeds and Users. The blocking calls they wrap may wait
+ * for remote domains, so they run in their own threads (virtual ones with -Dfeeds.threads=virtual)
+ * and not in the ForkJoinPool common pool, which has about one thread per core and is shared by
+ * the whole JVM.
+ */
+final class AsyncCalls {
+
+    // Threads running the blocking calls, when not using virtual threads
+    private static final int THREADS = Integer.getInteger("feeds.async.threads", 64);
+
+    private static final ExecutorService EXECUTOR = ServerThreads.newTaskExecutor(THREADS);
+
+    private AsyncCalls() {
+    }
+
+    /**
+     * Runs call in another thread, under the deadline of the caller.
+     */
+    static <T> CompletableFuture<Result<T>> supply(Supplier<Result<T>> call) {
+        Deadline deadline = Deadline.current();
+        return CompletableFuture.supplyAsync(() -> Deadline.with(deadline, call), EXECUTOR);
+    }
+}
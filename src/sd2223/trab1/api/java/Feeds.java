@@ -1,8 +1,13 @@
 package sd2223.trab1.api.java;
 
+import sd2223.trab1.api.FeedPage;
 import sd2223.trab1.api.Message;
+import sd2223.trab1.api.PropagatedMessage;
+import sd2223.trab1.api.SyncDigest;
+import sd2223.trab1.api.SyncRepair;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface Feeds {
 
@@ -14,6 +19,10 @@ public interface Feeds {
 
     Result<List<Message>> getMessages(String user, long time);
 
+    Result<FeedPage> getMessagesPage(String user, long time, int limit, String cursor);
+
+    Result<List<Message>> pollMessages(String user, long time, long timeout);
+
     Result<Void> subUser(String user, String userSub, String pwd);
 
     Result<Void> unsubscribeUser(String user, String userSub, String pwd);
@@ -27,5 +36,79 @@ public interface Feeds {
     Result<Void> propagateUnsub(String user, String userSub);
 
     Result<Void> propagateMsg(String[] users, Message msg);
-    
+
+    Result<Void> propagateMsgs(List<PropagatedMessage> batch);
+
+    Result<Void> invalidateUser(String user, String secret);
+
+    Result<SyncRepair> syncFeeds(SyncDigest digest);
+
+    /*
+     * Non-blocking variants. By default they run the blocking call in a thread of AsyncCalls;
+     * the remote clients override them so that no thread waits for the reply.
+     */
+
+    default CompletableFuture<Result<Long>> postMessageAsync(String user, String pwd, Message msg) {
+        return AsyncCalls.supply(() -> postMessage(user, pwd, msg));
+    }
+
+    default CompletableFuture<Result<Void>> removeFromPersonalFeedAsync(String user, long mid, String pwd) {
+        return AsyncCalls.supply(() -> removeFromPersonalFeed(user, mid, pwd));
+    }
+
+    default CompletableFuture<Result<Message>> getMessageAsync(String user, long mid) {
+        return AsyncCalls.supply(() -> getMessage(user, mid));
+    }
+
+    default CompletableFuture<Result<List<Message>>> getMessagesAsync(String user, long time) {
+        return AsyncCalls.supply(() -> getMessages(user, time));
+    }
+
+    default CompletableFuture<Result<FeedPage>> getMessagesPageAsync(String user, long time, int limit, String cursor) {
+        return AsyncCalls.supply(() -> getMessagesPage(user, time, limit, cursor));
+    }
+
+    default CompletableFuture<Result<List<Message>>> pollMessagesAsync(String user, long time, long timeout) {
+        return AsyncCalls.supply(() -> pollMessages(user, time, timeout));
+    }
+
+    default CompletableFuture<Result<Void>> subUserAsync(String user, String userSub, String pwd) {
+        return AsyncCalls.supply(() -> subUser(user, userSub, pwd));
+    }
+
+    default CompletableFuture<Result<Void>> unsubscribeUserAsync(String user, String userSub, String pwd) {
+        return AsyncCalls.supply(() -> unsubscribeUser(user, userSub, pwd));
+    }
+
+    default CompletableFuture<Result<List<String>>> listSubsAsync(String user) {
+        return AsyncCalls.supply(() -> listSubs(user));
+    }
+
+    default CompletableFuture<Result<Void>> deleteUserFeedAsync(String user) {
+        return AsyncCalls.supply(() -> deleteUserFeed(user));
+    }
+
+    default CompletableFuture<Result<Void>> propagateSubAsync(String user, String userSub) {
+        return AsyncCalls.supply(() -> propagateSub(user, userSub));
+    }
+
+    default CompletableFuture<Result<Void>> propagateUnsubAsync(String user, String userSub) {
+        return AsyncCalls.supply(() -> propagateUnsub(user, userSub));
+    }
+
+    default CompletableFuture<Result<Void>> propagateMsgAsync(String[] users, Message msg) {
+        return AsyncCalls.supply(() -> propagateMsg(users, msg));
+    }
+
+    default CompletableFuture<Result<Void>> propagateMsgsAsync(List<PropagatedMessage> batch) {
+        return AsyncCalls.supply(() -> propagateMsgs(batch));
+    }
+
+    default CompletableFuture<Result<Void>> invalidateUserAsync(String user, String secret) {
+        return AsyncCalls.supply(() -> invalidateUser(user, secret));
+    }
+
+    default CompletableFuture<Result<SyncRepair>> syncFeedsAsync(SyncDigest digest) {
+        return AsyncCalls.supply(() -> syncFeeds(digest));
+    }
 }
@@ -3,6 +3,7 @@ package sd2223.trab1.api.java;
 import sd2223.trab1.api.User;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface Users {
 
@@ -19,4 +20,37 @@ public interface Users {
     Result<Void> verifyPassword(String name, String pwd);
 
     Result<Void> checkUser(String name);
+
+    /*
+     * Non-blocking variants. By default they run the blocking call in a thread of AsyncCalls;
+     * the remote clients override them so that no thread waits for the reply.
+     */
+
+    default CompletableFuture<Result<String>> createUserAsync(User user) {
+        return AsyncCalls.supply(() -> createUser(user));
+    }
+
+    default CompletableFuture<Result<User>> getUserAsync(String name, String pwd) {
+        return AsyncCalls.supply(() -> getUser(name, pwd));
+    }
+
+    default CompletableFuture<Result<User>> updateUserAsync(String name, String pwd, User user) {
+        return AsyncCalls.supply(() -> updateUser(name, pwd, user));
+    }
+
+    default CompletableFuture<Result<User>> deleteUserAsync(String name, String pwd) {
+        return AsyncCalls.supply(() -> deleteUser(name, pwd));
+    }
+
+    default CompletableFuture<Result<List<User>>> searchUsersAsync(String pattern) {
+        return AsyncCalls.supply(() -> searchUsers(pattern));
+    }
+
+    default CompletableFuture<Result<Void>> verifyPasswordAsync(String name, String pwd) {
+        return AsyncCalls.supply(() -> verifyPassword(name, pwd));
+    }
+
+    default CompletableFuture<Result<Void>> checkUserAsync(String name) {
+        return AsyncCalls.supply(() -> checkUser(name));
+    }
 }
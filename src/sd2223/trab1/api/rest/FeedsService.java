@@ -2,7 +2,11 @@ package sd2223.trab1.api.rest;
 
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
+import sd2223.trab1.api.FeedPage;
 import sd2223.trab1.api.Message;
+import sd2223.trab1.api.PropagatedMessage;
+import sd2223.trab1.api.SyncDigest;
+import sd2223.trab1.api.SyncRepair;
 
 import java.util.List;
 
@@ -14,7 +18,11 @@ public interface FeedsService {
     String USER = "user";
     String QUERY = "query";
     String TIME = "time";
+    String LIMIT = "limit";
+    String CURSOR = "cursor";
+    String TIMEOUT = "timeout";
     String USERSUB = "userSub";
+    String SECRET_HEADER = "X-Feeds-Secret";
     String PATH = "/feeds";
 
     /**
@@ -80,6 +88,40 @@ public interface FeedsService {
     @Produces(MediaType.APPLICATION_JSON)
     List<Message> getMessages(@PathParam(USER) String user, @QueryParam(TIME) long time);
 
+    /**
+     * Returns one page of the messages stored in the server for a given user newer than time
+     * (note: may be a remote user), in chronological order.
+     *
+     * @param user   user feed being accessed (format user@domain)
+     * @param time   the oldest time of the messages to be returned
+     * @param limit  maximum number of messages in the page (optional, bounded by the server)
+     * @param cursor the continuation cursor returned with the previous page (optional)
+     * @return 200 a page of messages, potentially empty, with the cursor of the next page;
+     * 404 if the user does not exist;
+     * 400 if the cursor is not valid.
+     */
+    @GET
+    @Path("/page/{" + USER + "}")
+    @Produces(MediaType.APPLICATION_JSON)
+    FeedPage getMessagesPage(@PathParam(USER) String user, @QueryParam(TIME) long time,
+                             @QueryParam(LIMIT) int limit, @QueryParam(CURSOR) String cursor);
+
+    /**
+     * Long-poll for the messages of a given user newer than time (note: may be a remote user).
+     * Returns immediately if such messages already exist; otherwise holds the request open until
+     * a new message is inserted in the feed or the timeout expires.
+     *
+     * @param user    user feed being accessed (format user@domain)
+     * @param time    the oldest time of the messages to be returned
+     * @param timeout maximum time to wait in ms (optional, bounded by the server)
+     * @return 200 a list of messages, empty if the timeout expired;
+     * 404 if the user does not exist.
+     */
+    @GET
+    @Path("/poll/{" + USER + "}")
+    @Produces(MediaType.APPLICATION_JSON)
+    List<Message> pollMessages(@PathParam(USER) String user, @QueryParam(TIME) long time, @QueryParam(TIMEOUT) long timeout);
+
 
     /**
      * Subscribe a user.
@@ -171,5 +213,44 @@ public interface FeedsService {
     @Consumes(MediaType.APPLICATION_JSON)
     void propagateMsg(@QueryParam(QUERY) String[] users, Message msg);
 
+    /**
+     * Propaga um lote de mensagens de users de outro dominio, cada uma com o seu autor: este dominio entrega-a
+     * aos seus seguidores do autor, segundo o seu proprio indice de seguidores.
+     * Uma entrada sem autor e do formato antigo e traz a lista dos users deste dominio que a recebem.
+     *
+     * @param batch lote de mensagens
+     * @return 204 if ok
+     */
+    @POST
+    @Path("/propagate/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    void propagateMsgs(List<PropagatedMessage> batch);
+
+    /**
+     * Avisa o servidor de feeds de que as credenciais de um user mudaram, para descartar o que tem em cache sobre ele.
+     * So pode ser chamada por outros servidores: sem o segredo partilhado entre eles e recusada.
+     *
+     * @param user   user being accessed (format user@domain)
+     * @param secret segredo partilhado pelos servidores, no header X-Feeds-Secret
+     * @return 204 if ok
+     * 403 if the secret is missing or wrong
+     */
+    @DELETE
+    @Path("/cache/{" + USER + "}")
+    void invalidateUser(@PathParam(USER) String user, @HeaderParam(SECRET_HEADER) String secret);
+
+    /**
+     * Anti-entropy: compara os digests que outro dominio tem dos users deste dominio que segue
+     * com o estado deste servidor, e devolve so o que difere.
+     *
+     * @param digest digests dos autores deste dominio seguidos no dominio de quem envia
+     * @return 200 as msgs em falta e os seguidores que diferem, potencialmente vazios
+     */
+    @POST
+    @Path("/sync")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    SyncRepair syncFeeds(SyncDigest digest);
+
 
 }
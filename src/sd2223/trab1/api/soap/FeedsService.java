@@ -2,7 +2,11 @@ package sd2223.trab1.api.soap;
 
 import jakarta.jws.WebMethod;
 import jakarta.jws.WebService;
+import sd2223.trab1.api.FeedPage;
 import sd2223.trab1.api.Message;
+import sd2223.trab1.api.PropagatedMessage;
+import sd2223.trab1.api.SyncDigest;
+import sd2223.trab1.api.SyncRepair;
 
 import java.util.List;
 
@@ -65,6 +69,35 @@ public interface FeedsService {
     @WebMethod
     List<Message> getMessages(String user, long time) throws FeedsException;
 
+    /**
+     * Returns one page of the messages stored in the server for a given user newer than time
+     * (note: may be a remote user), in chronological order.
+     *
+     * @param user   user feed being accessed (format user@domain)
+     * @param time   the oldest time of the messages to be returned
+     * @param limit  maximum number of messages in the page (0 for the server default)
+     * @param cursor the continuation cursor returned with the previous page (null for the first page)
+     * @return a page of messages, potentially empty, with the cursor of the next page;
+     * @throws NOT_FOUND if the user does not exist
+     *                   BAD_REQUEST if the cursor is not valid
+     */
+    @WebMethod
+    FeedPage getMessagesPage(String user, long time, int limit, String cursor) throws FeedsException;
+
+    /**
+     * Long-poll for the messages of a given user newer than time (note: may be a remote user).
+     * Returns immediately if such messages already exist; otherwise waits until a new message is
+     * inserted in the feed or the timeout expires.
+     *
+     * @param user    user feed being accessed (format user@domain)
+     * @param time    the oldest time of the messages to be returned
+     * @param timeout maximum time to wait in ms (0 for the server default)
+     * @return a list of messages, empty if the timeout expired;
+     * @throws NOT_FOUND if the user does not exist.
+     */
+    @WebMethod
+    List<Message> pollMessages(String user, long time, long timeout) throws FeedsException;
+
     /**
      * Subscribe a user.
      * A user must contact the server of her domain directly (i.e., this operation should not be
@@ -141,5 +174,32 @@ public interface FeedsService {
      */
     void propagateMsg(String[] users, Message msg) throws FeedsException;
 
+    /**
+     * Propaga um lote de msgs para um dominio, cada uma com o seu autor: o dominio entrega-a aos seus
+     * seguidores do autor. Uma entrada sem autor e do formato antigo e traz os users que a recebem.
+     *
+     * @param batch lote de msgs
+     */
+    void propagateMsgs(List<PropagatedMessage> batch) throws FeedsException;
+
+    /**
+     * Avisa o servidor de feeds de que as credenciais de um user mudaram, para descartar o que tem em cache sobre ele.
+     * So pode ser chamada por outros servidores: sem o segredo partilhado entre eles e recusada.
+     *
+     * @param user   user being accessed (format user@domain)
+     * @param secret segredo partilhado pelos servidores
+     * @throws FORBIDDEN if the secret is missing or wrong
+     */
+    void invalidateUser(String user, String secret) throws FeedsException;
+
+    /**
+     * Anti-entropy: compara os digests que outro dominio tem dos users deste dominio que segue
+     * com o estado deste servidor, e devolve so o que difere.
+     *
+     * @param digest digests dos autores deste dominio seguidos no dominio de quem envia
+     * @return as msgs em falta e os seguidores que diferem
+     */
+    SyncRepair syncFeeds(SyncDigest digest) throws FeedsException;
+
 
 }
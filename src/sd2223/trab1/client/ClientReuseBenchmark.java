@@ -0,0 +1,108 @@
+package sd2223.trab1.client;
+
+import com.sun.net.httpserver.HttpServer;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.Response;
+import jakarta.xml.ws.Endpoint;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.jdkhttp.JdkHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import sd2223.trab1.api.java.Feeds;
+import sd2223.trab1.api.java.Result;
+import sd2223.trab1.api.rest.FeedsService;
+import sd2223.trab1.client.REST.RestFeedsClient;
+import sd2223.trab1.client.SOAP.SoapFeedsClient;
+import sd2223.trab1.server.REST.Feeds.RestFeedsResource;
+import sd2223.trab1.server.ServerSecret;
+import sd2223.trab1.server.SOAP.Feeds.SoapFeedsWebService;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+/**
+ * Microbenchmark do custo por chamada dos clientes, antes e depois de serem reutilizados.
+ * <p>
+ * Levanta localmente (127.0.0.1) um servidor REST e um SOAP de feeds e mede a latencia media de
+ * invalidateUser, que nao tem corpo nem contacta outros servidores:
+ * <ul>
+ * <li>REST antes: um Client do Jersey novo por chamada (e fechado no fim, para nao esgotar a memoria);</li>
+ * <li>REST depois: o mesmo RestFeedsClient, que usa o Client partilhado (keep-alive);</li>
+ * <li>SOAP antes: um SoapFeedsClient novo por chamada, que volta a descarregar o WSDL e a criar o stub;</li>
+ * <li>SOAP depois: o mesmo SoapFeedsClient, com o stub ja criado.</li>
+ * </ul>
+ * java -cp target/classes:DEPS sd2223.trab1.client.ClientReuseBenchmark [chamadas]
+ */
+public class ClientReuseBenchmark {
+
+    private static final String USER = "bench";
+    private static final String SECRET = "bench-secret";
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        // Tem de ser definido antes de a classe JavaFeeds ser inicializada
+        System.setProperty("feeds.outbox.dir", Files.createTempDirectory("client-bench").toString());
+        System.setProperty("feeds.sync.period", "0");
+        System.setProperty(ServerSecret.PROPERTY, SECRET);
+
+        var rest = JdkHttpServerFactory.createHttpServer(URI.create("http://127.0.0.1:0/rest"),
+                new ResourceConfig().register(new RestFeedsResource("bench-rest", 0)), false);
+        rest.start();
+        URI restURI = URI.create("http://127.0.0.1:" + rest.getAddress().getPort() + "/rest");
+
+        var soap = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        Endpoint.create(new SoapFeedsWebService("bench-soap", 0)).publish(soap.createContext("/soap"));
+        soap.start();
+        URI soapURI = URI.create("http://127.0.0.1:" + soap.getAddress().getPort() + "/soap");
+
+        System.out.printf("calls=%d rest=%s soap=%s%n", calls, restURI, soapURI);
+
+        Feeds restShared = new RestFeedsClient(restURI);
+        Feeds soapShared = new SoapFeedsClient(soapURI);
+
+        // Aquecimento (JIT, classes do Jersey e do Metro)
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+            measure(report, "rest  new client/call", calls, () -> newJerseyClientCall(restURI));
+            measure(report, "rest  shared client  ", calls, () -> restShared.invalidateUser(USER, SECRET));
+            // O SOAP sem reutilizacao e muito mais lento, por isso faz menos chamadas
+            measure(report, "soap  new stub/call  ", Math.max(1, calls / 10), () -> new SoapFeedsClient(soapURI).invalidateUser(USER, SECRET));
+            measure(report, "soap  cached stub    ", calls, () -> soapShared.invalidateUser(USER, SECRET));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Como os clientes REST faziam antes: cada um construia o seu proprio Client.
+     */
+    private static Result<Void> newJerseyClientCall(URI serverURI) {
+        ClientConfig config = new ClientConfig()
+                .property(ClientProperties.READ_TIMEOUT, 10000)
+                .property(ClientProperties.CONNECT_TIMEOUT, 10000);
+        Client client = ClientBuilder.newClient(config);
+        try {
+            Response r = client.target(serverURI).path(FeedsService.PATH).path("cache").path(USER)
+                    .request().header(FeedsService.SECRET_HEADER, SECRET).delete();
+            r.close();
+            return r.getStatus() / 100 == 2 ? Result.ok() : Result.error(Result.ErrorCode.INTERNAL_ERROR);
+        } finally {
+            client.close();
+        }
+    }
+
+    private static void measure(boolean report, String name, int calls, Supplier<Result<Void>> call) {
+        int failed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++)
+            if (!call.get().isOK())
+                failed++;
+        long elapsed = System.nanoTime() - start;
+        if (report)
+            System.out.printf("%s  %8.1f us/call  %8.0f calls/s  (%d calls, %d failed)%n",
+                    name, elapsed / 1000.0 / calls, calls * 1e9 / elapsed, calls, failed);
+    }
+}
@@ -1,11 +1,23 @@
 package sd2223.trab1.client;
 
+import sd2223.trab1.Deadline;
 import sd2223.trab1.Discovery;
+import sd2223.trab1.api.Message;
 import sd2223.trab1.api.java.Feeds;
+import sd2223.trab1.api.java.Result;
+import sd2223.trab1.client.REST.RestClient;
 import sd2223.trab1.client.REST.RestFeedsClient;
 import sd2223.trab1.client.SOAP.SoapFeedsClient;
 
 import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public class FeedsClientFactory {
 
@@ -14,17 +26,160 @@ public class FeedsClientFactory {
     private static final String SOAP = "/soap";
     private static final int MIN_REPLIES = 1;
 
-    public static Feeds get(String domain) {
-        Discovery discovery = Discovery.getInstance();
+    /**
+     * Clientes reutilizados entre pedidos.
+     * URI -> uri do servidor; Integer -> maxRetries; Feeds -> cliente
+     */
+    private static final Map<URI, Map<Integer, Feeds>> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Dominios cujas alteracoes de uris ja estao a ser seguidas no Discovery.
+     */
+    private static final Set<String> watched = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Descarta os clientes ligados a um uri que deixou de ser anunciado, para que o proximo
+     * pedido nao falhe num servidor que ja nao existe.
+     */
+    private static final Discovery.MembershipListener listener = new Discovery.MembershipListener() {
+        @Override
+        public void uriAdded(String serviceDomain, URI uri) {
+        }
+
+        @Override
+        public void uriRemoved(String serviceDomain, URI uri) {
+            clients.remove(uri);
+        }
+    };
+
+    public static <T> Result<T> call(String domain, Function<Feeds, Result<T>> op) {
+        return call(domain, RestClient.MAX_RETRIES, op);
+    }
+
+    /**
+     * Faz um pedido ao servidor de feeds do dominio, com um cliente que faz no maximo maxRetries tentativas.
+     * Se o dominio tiver varias replicas, e escolhida uma das menos carregadas.
+     * Os clientes sao reutilizados enquanto o uri do servidor continuar a ser anunciado.
+     * <p>
+     * A espera pela descoberta do dominio e limitada pelo Deadline do pedido corrente; se o
+     * dominio nao for descoberto a tempo, devolve TIMEOUT.
+     *
+     * @param domain     dominio
+     * @param maxRetries numero maximo de tentativas
+     * @param op         pedido a fazer ao cliente
+     * @return resultado do pedido
+     */
+    public static <T> Result<T> call(String domain, int maxRetries, Function<Feeds, Result<T>> op) {
         String serviceDomain = SERVICE + "." + domain;
-        URI[] uris = discovery.knownUrisOf(serviceDomain, MIN_REPLIES);
-        URI serverURI = uris[0];
+        URI[] uris;
+        try {
+            uris = urisOf(serviceDomain).join();
+        } catch (CompletionException x) {
+            return Result.error(Result.ErrorCode.TIMEOUT);
+        }
+        return op.apply(clientOf(ReplicaSelector.choose(serviceDomain, uris), maxRetries));
+    }
+
+    /**
+     * Como call, mas sem bloquear: nenhuma thread espera pela descoberta do dominio nem pela resposta.
+     *
+     * @param domain     dominio
+     * @param maxRetries numero maximo de tentativas
+     * @param op         pedido assincrono a fazer ao cliente
+     * @return resultado do pedido, TIMEOUT se o dominio nao for descoberto a tempo
+     */
+    public static <T> CompletableFuture<Result<T>> callAsync(String domain, int maxRetries,
+                                                             Function<Feeds, CompletableFuture<Result<T>>> op) {
+        String serviceDomain = SERVICE + "." + domain;
+        return resolved(serviceDomain, uris -> op.apply(clientOf(ReplicaSelector.choose(serviceDomain, uris), maxRetries)));
+    }
+
+    /**
+     * Faz o mesmo pedido a todas as replicas conhecidas do servidor de feeds do dominio, sem bloquear.
+     *
+     * @param domain     dominio
+     * @param maxRetries numero maximo de tentativas em cada replica
+     * @param op         pedido assincrono a fazer a cada cliente
+     * @return futuro que completa quando todas as replicas responderem; TIMEOUT se o dominio
+     * nao for descoberto a tempo ou alguma replica nao responder
+     */
+    public static CompletableFuture<Result<Void>> callAllAsync(String domain, int maxRetries,
+                                                               Function<Feeds, CompletableFuture<Result<Void>>> op) {
+        String serviceDomain = SERVICE + "." + domain;
+        return resolved(serviceDomain, uris -> {
+            List<CompletableFuture<Result<Void>>> calls = Arrays.stream(uris)
+                    .map(uri -> op.apply(clientOf(uri, maxRetries)))
+                    .toList();
+            return CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(v -> calls.stream()
+                            .map(CompletableFuture::join)
+                            .filter(r -> !r.isOK())
+                            .findFirst()
+                            .orElse(Result.ok()));
+        });
+    }
+
+    /**
+     * Obtem uma msg de um user de outro dominio, com hedging entre as replicas do dominio.
+     *
+     * @param domain dominio do user
+     * @param user   user
+     * @param mid    id da msg
+     * @return resultado do pedido
+     */
+    public static CompletableFuture<Result<Message>> getMessage(String domain, String user, long mid) {
+        return hedged("getMessage", domain, feeds -> feeds.getMessageAsync(user, mid));
+    }
+
+    /**
+     * Obtem as msgs de um user de outro dominio, com hedging entre as replicas do dominio.
+     *
+     * @param domain dominio do user
+     * @param user   user
+     * @param time   tempo a partir do qual se devolvem msgs
+     * @return resultado do pedido
+     */
+    public static CompletableFuture<Result<List<Message>>> getMessages(String domain, String user, long time) {
+        return hedged("getMessages", domain, feeds -> feeds.getMessagesAsync(user, time));
+    }
+
+    private static <T> CompletableFuture<Result<T>> hedged(String op, String domain, Function<Feeds, CompletableFuture<Result<T>>> call) {
+        String serviceDomain = SERVICE + "." + domain;
+        return resolved(serviceDomain, uris -> Hedging.call(op, serviceDomain, uris, uri -> call.apply(clientOf(uri, RestClient.MAX_RETRIES))));
+    }
+
+    /**
+     * Faz um pedido assincrono quando os uris do servico forem conhecidos, com o Deadline do
+     * pedido corrente (a descoberta completa noutra thread), ou devolve TIMEOUT se nao o forem a tempo.
+     */
+    private static <T> CompletableFuture<Result<T>> resolved(String serviceDomain, Function<URI[], CompletableFuture<Result<T>>> request) {
+        Deadline deadline = Deadline.current();
+        return urisOf(serviceDomain)
+                .handle((uris, x) -> x != null
+                        ? CompletableFuture.completedFuture(Result.<T>error(Result.ErrorCode.TIMEOUT))
+                        : Deadline.with(deadline, () -> request.apply(uris)))
+                .thenCompose(f -> f);
+    }
+
+    private static CompletableFuture<URI[]> urisOf(String serviceDomain) {
+        Discovery discovery = Discovery.getInstance();
+        if (watched.add(serviceDomain))
+            discovery.subscribe(serviceDomain, listener);
+        return discovery.knownUrisOfAsync(serviceDomain, MIN_REPLIES);
+    }
+
+    private static Feeds clientOf(URI serverURI, int maxRetries) {
+        return clients.computeIfAbsent(serverURI, uri -> new ConcurrentHashMap<>())
+                .computeIfAbsent(maxRetries, retries -> newClient(serverURI, retries));
+    }
+
+    private static Feeds newClient(URI serverURI, int maxRetries) {
         var uriString = serverURI.toString();
 
         if (uriString.endsWith(REST))
-            return new RestFeedsClient(serverURI);
+            return new RestFeedsClient(serverURI, maxRetries);
         else if (uriString.endsWith(SOAP))
-            return new SoapFeedsClient(serverURI);
+            return new SoapFeedsClient(serverURI, maxRetries);
         else
             throw new RuntimeException("Unknown service type..." + uriString);
     }
@@ -0,0 +1,75 @@
+package sd2223.trab1.client;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Contadores dos pedidos com hedging de uma operacao.
+ */
+public class HedgeStats implements HedgeStatsMBean {
+
+    private static Logger Log = Logger.getLogger(HedgeStats.class.getName());
+
+    private static final String OBJECT_NAME = "sd2223.trab1:type=HedgeStats,name=%s";
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * Cria os contadores e regista-os no servidor JMX da plataforma.
+     *
+     * @param name nome da operacao
+     */
+    HedgeStats(String name) {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var objectName = new ObjectName(String.format(OBJECT_NAME, name));
+            if (!server.isRegistered(objectName))
+                server.registerMBean(this, objectName);
+        } catch (Exception x) {
+            Log.warning("Cannot register hedge stats " + name + ": " + x.getMessage());
+        }
+    }
+
+    void request() {
+        requests.increment();
+    }
+
+    void hedged() {
+        hedged.increment();
+    }
+
+    void hedgeWon() {
+        hedgeWins.increment();
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getHedged() {
+        return hedged.sum();
+    }
+
+    @Override
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    @Override
+    public double getHedgeRate() {
+        long r = requests.sum();
+        return r == 0 ? 0.0 : (double) hedged.sum() / r;
+    }
+
+    @Override
+    public double getWinRate() {
+        long h = hedged.sum();
+        return h == 0 ? 0.0 : (double) hedgeWins.sum() / h;
+    }
+}
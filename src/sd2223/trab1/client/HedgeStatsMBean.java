@@ -0,0 +1,23 @@
+package sd2223.trab1.client;
+
+/**
+ * Metricas dos pedidos com hedging de uma operacao, expostas por JMX.
+ */
+public interface HedgeStatsMBean {
+
+    long getRequests();
+
+    long getHedged();
+
+    long getHedgeWins();
+
+    /**
+     * @return fracao dos pedidos em que foi enviado um segundo pedido a outra replica
+     */
+    double getHedgeRate();
+
+    /**
+     * @return fracao dos segundos pedidos que responderam primeiro
+     */
+    double getWinRate();
+}
@@ -0,0 +1,139 @@
+package sd2223.trab1.client;
+
+import sd2223.trab1.Deadline;
+import sd2223.trab1.api.java.Result;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Pedidos com hedging (ativado com -Dfeeds.hedge=true): se a replica escolhida nao responder
+ * dentro de um percentil da latencia recente desse servico, e enviado o mesmo pedido a outra
+ * replica, e fica a primeira resposta. A resposta que chega depois e ignorada: o pedido
+ * que perde nao e abortado (nem o REST nem o SOAP o permitem) e corre ate ao fim.
+ * So deve ser usado em leituras, que podem ser repetidas sem efeitos.
+ */
+class Hedging {
+
+    static final boolean ENABLED = Boolean.getBoolean("feeds.hedge");
+
+    // Percentil da latencia apos o qual e enviado o segundo pedido
+    static final int PERCENTILE = Integer.getInteger("feeds.hedge.percentile", 95);
+
+    // Atraso minimo, e atraso usado enquanto nao ha latencias suficientes, em ms
+    static final long MIN_DELAY = Long.getLong("feeds.hedge.minDelay", 5);
+    static final long DEFAULT_DELAY = Long.getLong("feeds.hedge.defaultDelay", 50);
+
+    // Numero de latencias recentes guardadas por servico (potencia de 2), e minimo para calcular o percentil
+    private static final int WINDOW = 256;
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * Latencias recentes de um servico, em ms.
+     */
+    private static class Latencies {
+        final int[] millis = new int[WINDOW];
+        final AtomicInteger next = new AtomicInteger();
+
+        void add(long nanos) {
+            millis[next.getAndIncrement() & (WINDOW - 1)] = (int) Math.min(Integer.MAX_VALUE, nanos / 1_000_000);
+        }
+
+        long percentile(int p) {
+            int n = Math.min(next.get(), WINDOW);
+            if (n < MIN_SAMPLES) return DEFAULT_DELAY;
+            int[] sorted = Arrays.copyOf(millis, n);
+            Arrays.sort(sorted);
+            return Math.max(MIN_DELAY, sorted[Math.min(n - 1, (int) Math.ceil(n * p / 100.0) - 1)]);
+        }
+    }
+
+    /**
+     * String -> servico e dominio (format service.domain); Latencies
+     */
+    private static final Map<String, Latencies> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * String -> operacao; HedgeStats
+     */
+    private static final Map<String, HedgeStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Faz um pedido a uma das replicas e, se estiver ativado e ela demorar, tambem a outra.
+     *
+     * @param op            nome da operacao, para as metricas
+     * @param serviceDomain servico e dominio (format service.domain)
+     * @param uris          uris conhecidos do servico (pelo menos um)
+     * @param request       faz o pedido a uma replica
+     * @return a primeira resposta
+     */
+    static <T> CompletableFuture<Result<T>> call(String op, String serviceDomain, URI[] uris,
+                                                 Function<URI, CompletableFuture<Result<T>>> request) {
+        URI first = ReplicaSelector.choose(serviceDomain, uris);
+        if (!ENABLED || uris.length < 2)
+            return request.apply(first);
+
+        HedgeStats opStats = stats.computeIfAbsent(op, HedgeStats::new);
+        Latencies serviceLatencies = latencies.computeIfAbsent(serviceDomain, k -> new Latencies());
+        opStats.request();
+
+        CompletableFuture<Result<T>> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+
+        long start = System.nanoTime();
+        CompletableFuture<Result<T>> primary = request.apply(first);
+        primary.whenComplete((r, x) -> {
+            if (x == null && !unreachable(r))
+                serviceLatencies.add(System.nanoTime() - start);
+        });
+        primary.whenComplete(answer(winner, pending, null));
+
+        Deadline deadline = Deadline.current();
+        var delayed = CompletableFuture.delayedExecutor(serviceLatencies.percentile(PERCENTILE), TimeUnit.MILLISECONDS);
+        delayed.execute(() -> {
+            if (winner.isDone()) return;
+            URI[] others = Arrays.stream(uris).filter(u -> !u.equals(first)).toArray(URI[]::new);
+            pending.incrementAndGet();
+            opStats.hedged();
+            URI second = ReplicaSelector.choose(serviceDomain, others);
+            CompletableFuture<Result<T>> hedge = Deadline.with(deadline, () -> request.apply(second));
+            hedge.whenComplete(answer(winner, pending, opStats));
+            // A resposta mais lenta e ignorada. Cancelar o futuro so evita que ela ainda seja tratada
+            // (ex.: contada nas latencias); o pedido em si nao e abortado e corre ate ao fim
+            winner.whenComplete((r, x) -> {
+                primary.cancel(false);
+                hedge.cancel(false);
+            });
+        });
+        return winner;
+    }
+
+    /**
+     * Completa o pedido com a primeira resposta, exceto se a replica estava inacessivel e
+     * o outro pedido ainda pode responder.
+     *
+     * @param hedgeStats metricas a atualizar se esta resposta vencer, ou null para o primeiro pedido
+     */
+    private static <T> BiConsumer<Result<T>, Throwable> answer(CompletableFuture<Result<T>> winner, AtomicInteger pending,
+                                                               HedgeStats hedgeStats) {
+        return (r, x) -> {
+            boolean last = pending.decrementAndGet() == 0;
+            if (!last && (x != null || unreachable(r)))
+                return;
+            boolean won = x == null ? winner.complete(r) : winner.completeExceptionally(x);
+            if (won && hedgeStats != null)
+                hedgeStats.hedgeWon();
+        };
+    }
+
+    private static boolean unreachable(Result<?> r) {
+        return !r.isOK() && r.error() == Result.ErrorCode.TIMEOUT;
+    }
+}
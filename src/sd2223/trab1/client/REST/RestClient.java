@@ -7,11 +7,19 @@ import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.Response;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
+import jakarta.ws.rs.client.Invocation;
+import sd2223.trab1.Deadline;
 import sd2223.trab1.api.java.Result;
 import sd2223.trab1.api.java.Result.ErrorCode;
+import sd2223.trab1.client.Resilience;
 
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static sd2223.trab1.api.java.Result.error;
@@ -24,37 +32,130 @@ public class RestClient {
 
     protected static final int READ_TIMEOUT = 10000;
     protected static final int CONNECT_TIMEOUT = 10000;
-    protected static final int MAX_RETRIES = 10;
-    protected static final int RETRY_SLEEP = 3000;
+    public static final int MAX_RETRIES = 10;
+
+    /**
+     * Jersey client shared by all the REST clients, so that they reuse the same
+     * connection pool (keep-alive) instead of bootstrapping a client per instance.
+     */
+    private static final ClientConfig SHARED_CONFIG = new ClientConfig()
+            .property(ClientProperties.READ_TIMEOUT, READ_TIMEOUT)
+            .property(ClientProperties.CONNECT_TIMEOUT, CONNECT_TIMEOUT);
+    private static final Client SHARED_CLIENT = ClientBuilder.newClient(SHARED_CONFIG);
 
     final URI serverURI;
     final Client client;
     final ClientConfig config;
+    final int maxRetries;
+    final Resilience resilience;
 
     RestClient(URI serverURI) {
-        this.serverURI = serverURI;
-        this.config = new ClientConfig();
-
-        config.property(ClientProperties.READ_TIMEOUT, READ_TIMEOUT);
-        config.property(ClientProperties.CONNECT_TIMEOUT, CONNECT_TIMEOUT);
+        this(serverURI, MAX_RETRIES);
+    }
 
-        this.client = ClientBuilder.newClient(config);
+    RestClient(URI serverURI, int maxRetries) {
+        this.serverURI = serverURI;
+        this.maxRetries = maxRetries;
+        this.resilience = Resilience.of(serverURI);
+        this.config = SHARED_CONFIG;
+        this.client = SHARED_CLIENT;
     }
 
     protected <T> Result<T> reTry(Supplier<Result<T>> func) {
-        for (int i = 0; i < MAX_RETRIES; i++)
+        for (int i = 0; i < maxRetries; i++) {
+            // Deadline spent: whoever made the request already gave up on it
+            // Circuit open: the server is down, fail without waiting for it
+            // (the deadline is checked first, because allowRequest takes the half-open probe)
+            if (Deadline.remainingMillis() <= 0 || !resilience.allowRequest())
+                break;
             try {
-                return func.get();
+                Result<T> result = func.get();
+                resilience.onSuccess();
+                return result;
             } catch (ProcessingException x) {
                 Log.fine("Timeout: " + x.getMessage());
-                sleep_ms(RETRY_SLEEP);
+                resilience.onFailure();
+                long backoff = resilience.backoff(i);
+                if (i == maxRetries - 1 || backoff >= Deadline.remainingMillis() || !resilience.allowRetry())
+                    break;
+                sleep_ms(backoff);
             } catch (Exception x) {
+                // Not a failure to reach the server: must not leave the circuit half-open
+                resilience.onSuccess();
                 x.printStackTrace();
                 return error(ErrorCode.INTERNAL_ERROR);
             }
+        }
         return error(ErrorCode.TIMEOUT);
     }
 
+    /**
+     * Like reTry, for requests made with the non-blocking (rx) invoker: no thread waits
+     * for the reply nor sleeps between attempts.
+     */
+    protected <T> CompletableFuture<Result<T>> reTryAsync(Supplier<CompletionStage<Result<T>>> func) {
+        // The retries run in other threads, but keep the deadline of the caller
+        return reTryAsync(func, Deadline.current(), 0);
+    }
+
+    private <T> CompletableFuture<Result<T>> reTryAsync(Supplier<CompletionStage<Result<T>>> func, Deadline deadline, int attempt) {
+        if ((deadline != null && deadline.remaining() <= 0) || !resilience.allowRequest())
+            return CompletableFuture.completedFuture(error(ErrorCode.TIMEOUT));
+
+        CompletableFuture<Result<T>> request;
+        try {
+            request = Deadline.with(deadline, func).toCompletableFuture();
+        } catch (Exception x) {
+            request = CompletableFuture.failedFuture(x);
+        }
+        return request
+                .thenApply(result -> {
+                    resilience.onSuccess();
+                    return CompletableFuture.completedFuture(result);
+                })
+                .exceptionally(x -> {
+                    Throwable cause = x instanceof CompletionException && x.getCause() != null ? x.getCause() : x;
+                    if (!(cause instanceof ProcessingException)) {
+                        resilience.onSuccess();
+                        Log.log(Level.WARNING, "Request to " + serverURI + " failed", cause);
+                        return CompletableFuture.completedFuture(error(ErrorCode.INTERNAL_ERROR));
+                    }
+                    Log.fine("Timeout: " + cause.getMessage());
+                    resilience.onFailure();
+                    long backoff = resilience.backoff(attempt);
+                    if (attempt >= maxRetries - 1 || (deadline != null && backoff >= deadline.remaining()) || !resilience.allowRetry())
+                        return CompletableFuture.completedFuture(error(ErrorCode.TIMEOUT));
+                    var delayed = CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS);
+                    return CompletableFuture.runAsync(() -> {
+                    }, delayed).thenCompose(v -> reTryAsync(func, deadline, attempt + 1));
+                })
+                .thenCompose(f -> f);
+    }
+
+    /**
+     * Makes a request with the non-blocking (rx) invoker, retrying it like reTryAsync.
+     */
+    protected <T> CompletableFuture<Result<T>> requestAsync(Supplier<CompletionStage<Response>> request, Class<T> entityType) {
+        return reTryAsync(() -> request.get().thenApply(r -> toJavaResult(r, entityType)));
+    }
+
+    protected <T> CompletableFuture<Result<T>> requestAsync(Supplier<CompletionStage<Response>> request, GenericType<T> entityType) {
+        return reTryAsync(() -> request.get().thenApply(r -> toJavaResult(r, entityType)));
+    }
+
+    /**
+     * Sends the remaining Deadline of the current request, and shrinks the timeouts to it.
+     */
+    protected Invocation.Builder withDeadline(Invocation.Builder request) {
+        long remaining = Deadline.remainingMillis();
+        if (remaining == Deadline.NONE)
+            return request;
+        int timeout = (int) Math.max(1, Math.min(READ_TIMEOUT, remaining));
+        return request
+                .header(Deadline.HEADER, Math.max(0, remaining))
+                .property(ClientProperties.READ_TIMEOUT, timeout)
+                .property(ClientProperties.CONNECT_TIMEOUT, Math.min(CONNECT_TIMEOUT, timeout));
+    }
 
     protected <T> Result<T> toJavaResult(Response r, Class<T> entityType) {
         try {
@@ -100,7 +201,7 @@ public class RestClient {
         return serverURI.toString();
     }
 
-    private void sleep_ms(int ms) {
+    private void sleep_ms(long ms) {
         try {
             Thread.sleep(ms);
         } catch (InterruptedException e) {
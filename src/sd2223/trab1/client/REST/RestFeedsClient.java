@@ -1,24 +1,37 @@
 package sd2223.trab1.client.REST;
 
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.client.WebTarget;
 import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import sd2223.trab1.api.FeedPage;
 import sd2223.trab1.api.Message;
+import sd2223.trab1.api.PropagatedMessage;
+import sd2223.trab1.api.SyncDigest;
+import sd2223.trab1.api.SyncRepair;
 import sd2223.trab1.api.java.Feeds;
 import sd2223.trab1.api.java.Result;
 import sd2223.trab1.api.rest.FeedsService;
 
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class RestFeedsClient extends RestClient implements Feeds {
 
+    private static final GenericType<List<Message>> MESSAGES = new GenericType<>() {
+    };
+
     final WebTarget target;
 
     public RestFeedsClient(URI serverURI) {
-        super(serverURI);
+        this(serverURI, MAX_RETRIES);
+    }
+
+    public RestFeedsClient(URI serverURI, int maxRetries) {
+        super(serverURI, maxRetries);
         target = client.target(serverURI).path(FeedsService.PATH);
     }
 
@@ -42,6 +55,16 @@ public class RestFeedsClient extends RestClient implements Feeds {
         return super.reTry(() -> clt_getMessages(user, time));
     }
 
+    @Override
+    public Result<FeedPage> getMessagesPage(String user, long time, int limit, String cursor) {
+        return super.reTry(() -> clt_getMessagesPage(user, time, limit, cursor));
+    }
+
+    @Override
+    public Result<List<Message>> pollMessages(String user, long time, long timeout) {
+        return super.reTry(() -> clt_pollMessages(user, time, timeout));
+    }
+
     @Override
     public Result<Void> subUser(String user, String userSub, String pwd) {
         return null;
@@ -77,64 +100,222 @@ public class RestFeedsClient extends RestClient implements Feeds {
         return super.reTry(() -> clt_propagateMsg(users, msg));
     }
 
+    @Override
+    public Result<Void> propagateMsgs(List<PropagatedMessage> batch) {
+        return super.reTry(() -> clt_propagateMsgs(batch));
+    }
+
+    @Override
+    public Result<Void> invalidateUser(String user, String secret) {
+        return super.reTry(() -> clt_invalidateUser(user, secret));
+    }
+
+    @Override
+    public Result<SyncRepair> syncFeeds(SyncDigest digest) {
+        return super.reTry(() -> clt_syncFeeds(digest));
+    }
+
+
+    @Override
+    public CompletableFuture<Result<Message>> getMessageAsync(String user, long mid) {
+        return super.requestAsync(() -> req_getMessage(user, mid).rx().get(), Message.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<List<Message>>> getMessagesAsync(String user, long time) {
+        return super.requestAsync(() -> req_getMessages(user, time).rx().get(), MESSAGES);
+    }
+
+    @Override
+    public CompletableFuture<Result<FeedPage>> getMessagesPageAsync(String user, long time, int limit, String cursor) {
+        return super.requestAsync(() -> req_getMessagesPage(user, time, limit, cursor).rx().get(), FeedPage.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<List<Message>>> pollMessagesAsync(String user, long time, long timeout) {
+        return super.requestAsync(() -> req_pollMessages(user, time, timeout).rx().get(), MESSAGES);
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> deleteUserFeedAsync(String user) {
+        return super.requestAsync(() -> req_delUserFeed(user).rx().delete(), Void.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> propagateSubAsync(String user, String userSub) {
+        return super.requestAsync(() -> req_suber(user, userSub).rx().post(Entity.entity(user, MediaType.APPLICATION_JSON)), Void.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> propagateUnsubAsync(String user, String userSub) {
+        return super.requestAsync(() -> req_suber(user, userSub).rx().delete(), Void.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> propagateMsgAsync(String[] users, Message msg) {
+        return super.requestAsync(() -> req_propagateMsg(users).rx().post(Entity.entity(msg, MediaType.APPLICATION_JSON)), Void.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> propagateMsgsAsync(List<PropagatedMessage> batch) {
+        return super.requestAsync(() -> req_propagateMsgs().rx().post(Entity.entity(batch, MediaType.APPLICATION_JSON)), Void.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> invalidateUserAsync(String user, String secret) {
+        return super.requestAsync(() -> req_invalidateUser(user, secret).rx().delete(), Void.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<SyncRepair>> syncFeedsAsync(SyncDigest digest) {
+        return super.requestAsync(() -> req_syncFeeds().rx().post(Entity.entity(digest, MediaType.APPLICATION_JSON)), SyncRepair.class);
+    }
+
 
     private Result<Message> clt_getMessage(String user, long mid) {
-        Response r = target
+        Response r = req_getMessage(user, mid).get();
+        return super.toJavaResult(r, Message.class);
+    }
+
+    private Result<List<Message>> clt_getMessages(String user, long time) {
+        Response r = req_getMessages(user, time).get();
+        return super.toJavaResult(r, MESSAGES);
+    }
+
+    private Result<FeedPage> clt_getMessagesPage(String user, long time, int limit, String cursor) {
+        Response r = req_getMessagesPage(user, time, limit, cursor).get();
+        return super.toJavaResult(r, FeedPage.class);
+    }
+
+    private Result<List<Message>> clt_pollMessages(String user, long time, long timeout) {
+        Response r = req_pollMessages(user, time, timeout).get();
+        return super.toJavaResult(r, MESSAGES);
+    }
+
+    private Result<Void> clt_propagateSub(String user, String userSub) {
+        Response r = req_suber(user, userSub)
+                .post(Entity.entity(user, MediaType.APPLICATION_JSON));
+        return super.toJavaResult(r, Void.class);
+    }
+
+    private Result<Void> clt_propagateUnsub(String user, String userSub) {
+        Response r = req_suber(user, userSub).delete();
+        return super.toJavaResult(r, Void.class);
+    }
+
+    private Result<Void> clt_delUserFeed(String user) {
+        Response r = req_delUserFeed(user).delete();
+        return super.toJavaResult(r, Void.class);
+    }
+
+    private Result<Void> clt_propagateMsg(String[] allUsers, Message msg) {
+        Response r = req_propagateMsg(allUsers)
+                .post(Entity.entity(msg, MediaType.APPLICATION_JSON));
+        return super.toJavaResult(r, Void.class);
+    }
+
+    private Result<Void> clt_propagateMsgs(List<PropagatedMessage> batch) {
+        Response r = req_propagateMsgs()
+                .post(Entity.entity(batch, MediaType.APPLICATION_JSON));
+        return super.toJavaResult(r, Void.class);
+    }
+
+    private Result<Void> clt_invalidateUser(String user, String secret) {
+        Response r = req_invalidateUser(user, secret).delete();
+        return super.toJavaResult(r, Void.class);
+    }
+
+    private Result<SyncRepair> clt_syncFeeds(SyncDigest digest) {
+        Response r = req_syncFeeds()
+                .post(Entity.entity(digest, MediaType.APPLICATION_JSON));
+        return super.toJavaResult(r, SyncRepair.class);
+    }
+
+
+    /*
+     * Pedidos, partilhados pelas versoes bloqueantes e assincronas.
+     */
+
+    private Invocation.Builder req_getMessage(String user, long mid) {
+        return super.withDeadline(target
                 .path(user)
                 .path(String.valueOf(mid))
                 .request()
-                .accept(MediaType.APPLICATION_JSON)
-                .get();
-        return super.toJavaResult(r, Message.class);
+                .accept(MediaType.APPLICATION_JSON));
     }
 
-    private Result<List<Message>> clt_getMessages(String user, long time) {
-        Response r = target
+    private Invocation.Builder req_getMessages(String user, long time) {
+        return super.withDeadline(target
                 .path(user)
                 .queryParam(FeedsService.TIME, time)
                 .request()
-                .accept(MediaType.APPLICATION_JSON)
-                .get();
-        return super.toJavaResult(r, new GenericType<List<Message>>() {
-        });
+                .accept(MediaType.APPLICATION_JSON));
     }
 
+    private Invocation.Builder req_getMessagesPage(String user, long time, int limit, String cursor) {
+        WebTarget t = target
+                .path("page")
+                .path(user)
+                .queryParam(FeedsService.TIME, time)
+                .queryParam(FeedsService.LIMIT, limit);
+        if (cursor != null)
+            t = t.queryParam(FeedsService.CURSOR, cursor);
+        return super.withDeadline(t
+                .request()
+                .accept(MediaType.APPLICATION_JSON));
+    }
 
-    private Result<Void> clt_propagateSub(String user, String userSub) {
-        Response r = target
+    private Invocation.Builder req_pollMessages(String user, long time, long timeout) {
+        return super.withDeadline(target
+                .path("poll")
                 .path(user)
-                .path("suber")
-                .path(userSub)
+                .queryParam(FeedsService.TIME, time)
+                .queryParam(FeedsService.TIMEOUT, timeout)
                 .request()
-                .post(Entity.entity(user, MediaType.APPLICATION_JSON));
-        return super.toJavaResult(r, Void.class);
+                .accept(MediaType.APPLICATION_JSON));
     }
 
-    private Result<Void> clt_propagateUnsub(String user, String userSub) {
-        Response r = target
+    private Invocation.Builder req_suber(String user, String userSub) {
+        return super.withDeadline(target
                 .path(user)
                 .path("suber")
                 .path(userSub)
-                .request()
-                .delete();
-        return super.toJavaResult(r, Void.class);
+                .request());
     }
 
-    private Result<Void> clt_delUserFeed(String user) {
-        Response r = target
+    private Invocation.Builder req_delUserFeed(String user) {
+        return super.withDeadline(target
                 .path(user)
-                .request()
-                .delete();
-        return super.toJavaResult(r, Void.class);
+                .request());
     }
 
-    private Result<Void> clt_propagateMsg(String[] allUsers, Message msg) {
-        Response r = target
+    private Invocation.Builder req_propagateMsg(String[] allUsers) {
+        return super.withDeadline(target
                 .path("propagate")
                 .queryParam(FeedsService.QUERY, allUsers)
+                .request());
+    }
+
+    private Invocation.Builder req_propagateMsgs() {
+        return super.withDeadline(target
+                .path("propagate")
+                .path("batch")
+                .request());
+    }
+
+    private Invocation.Builder req_invalidateUser(String user, String secret) {
+        return super.withDeadline(target
+                .path("cache")
+                .path(user)
                 .request()
-                .post(Entity.entity(msg, MediaType.APPLICATION_JSON));
-        return super.toJavaResult(r, Void.class);
+                .header(FeedsService.SECRET_HEADER, secret));
+    }
+
+    private Invocation.Builder req_syncFeeds() {
+        return super.withDeadline(target
+                .path("sync")
+                .request()
+                .accept(MediaType.APPLICATION_JSON));
     }
 
 
@@ -1,6 +1,7 @@
 package sd2223.trab1.client.REST;
 
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.client.WebTarget;
 import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.MediaType;
@@ -12,9 +13,13 @@ import sd2223.trab1.api.rest.UsersService;
 
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class RestUsersClient extends RestClient implements Users {
 
+    private static final GenericType<List<User>> USERS = new GenericType<>() {
+    };
+
     final WebTarget target;
 
     public RestUsersClient(URI serverURI) {
@@ -58,75 +63,138 @@ public class RestUsersClient extends RestClient implements Users {
     }
 
 
+    @Override
+    public CompletableFuture<Result<String>> createUserAsync(User user) {
+        return super.requestAsync(() -> req_createUser().rx().post(Entity.entity(user, MediaType.APPLICATION_JSON)), String.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<User>> getUserAsync(String name, String pwd) {
+        return super.requestAsync(() -> req_getUser(name, pwd).rx().get(), User.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<User>> updateUserAsync(String name, String pwd, User user) {
+        return super.requestAsync(() -> req_updateUser(name, pwd).rx().put(Entity.entity(user, MediaType.APPLICATION_JSON)), User.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<User>> deleteUserAsync(String name, String pwd) {
+        return super.requestAsync(() -> req_delUser(name, pwd).rx().delete(), User.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<List<User>>> searchUsersAsync(String pattern) {
+        return super.requestAsync(() -> req_searchUser(pattern).rx().get(), USERS);
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> verifyPasswordAsync(String name, String pwd) {
+        return super.requestAsync(() -> req_verifyPassword(name, pwd).rx().get(), Void.class);
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> checkUserAsync(String name) {
+        return super.requestAsync(() -> req_checkUser(name).rx().get(), Void.class);
+    }
+
+
     private Result<String> clt_createUser(User user) {
-        Response r = target
-                .request()
+        Response r = req_createUser()
                 .post(Entity.entity(user, MediaType.APPLICATION_JSON));
 
         return super.toJavaResult(r, String.class);
     }
 
     private Result<User> clt_getUser(String name, String pwd) {
-        Response r = target
-                .path(name)
-                .queryParam(UsersService.PWD, pwd)
-                .request()
-                .accept(MediaType.APPLICATION_JSON)
-                .get();
+        Response r = req_getUser(name, pwd).get();
 
         return super.toJavaResult(r, User.class);
     }
 
     private Result<User> clt_updateUser(String name, String pwd, User user) {
-        Response r = target
-                .path(name)
-                .path(UsersService.PWD)
-                .queryParam(UsersService.PWD, pwd)
-                .request()
+        Response r = req_updateUser(name, pwd)
                 .put(Entity.entity(user, MediaType.APPLICATION_JSON));
 
         return super.toJavaResult(r, User.class);
     }
 
     private Result<User> clt_delUser(String name, String pwd) {
-        Response r = target
-                .path(name)
-                .queryParam(UsersService.PWD, pwd)
-                .request()
-                .accept(MediaType.APPLICATION_JSON)
-                .delete();
+        Response r = req_delUser(name, pwd).delete();
 
         return super.toJavaResult(r, User.class);
     }
 
     private Result<List<User>> clt_searchUser(String pattern) {
-        Response r = target
-                .queryParam(UsersService.QUERY, pattern)
-                .request()
-                .accept(MediaType.APPLICATION_JSON)
-                .get();
-        return super.toJavaResult(r, new GenericType<List<User>>() {
-        });
+        Response r = req_searchUser(pattern).get();
+        return super.toJavaResult(r, USERS);
     }
 
     private Result<Void> clt_verifyPassword(String name, String pwd) {
-        Response r = target
+        Response r = req_verifyPassword(name, pwd).get();
+
+        return super.toJavaResult(r, Void.class);
+    }
+
+    private Result<Void> clt_checkUser(String name) {
+        Response r = req_checkUser(name).get();
+
+        return super.toJavaResult(r, Void.class);
+    }
+
+
+    /*
+     * Pedidos, partilhados pelas versoes bloqueantes e assincronas.
+     */
+
+    private Invocation.Builder req_createUser() {
+        return super.withDeadline(target
+                .request());
+    }
+
+    private Invocation.Builder req_getUser(String name, String pwd) {
+        return super.withDeadline(target
                 .path(name)
-                .path(UsersService.PWD)
                 .queryParam(UsersService.PWD, pwd)
                 .request()
-                .get();
+                .accept(MediaType.APPLICATION_JSON));
+    }
 
-        return super.toJavaResult(r, Void.class);
+    private Invocation.Builder req_updateUser(String name, String pwd) {
+        return super.withDeadline(target
+                .path(name)
+                .path(UsersService.PWD)
+                .queryParam(UsersService.PWD, pwd)
+                .request());
     }
 
-    private Result<Void> clt_checkUser(String name) {
-        Response r = target
+    private Invocation.Builder req_delUser(String name, String pwd) {
+        return super.withDeadline(target
                 .path(name)
+                .queryParam(UsersService.PWD, pwd)
                 .request()
-                .get();
+                .accept(MediaType.APPLICATION_JSON));
+    }
 
-        return super.toJavaResult(r, Void.class);
+    private Invocation.Builder req_searchUser(String pattern) {
+        return super.withDeadline(target
+                .queryParam(UsersService.QUERY, pattern)
+                .request()
+                .accept(MediaType.APPLICATION_JSON));
+    }
+
+    private Invocation.Builder req_verifyPassword(String name, String pwd) {
+        return super.withDeadline(target
+                .path(name)
+                .path(UsersService.PWD)
+                .queryParam(UsersService.PWD, pwd)
+                .request());
+    }
+
+    private Invocation.Builder req_checkUser(String name) {
+        return super.withDeadline(target
+                .path(name)
+                .request());
     }
 
 
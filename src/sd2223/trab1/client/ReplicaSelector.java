@@ -0,0 +1,40 @@
+package sd2223.trab1.client;
+
+import sd2223.trab1.Discovery;
+
+import java.net.URI;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Escolhe uma de varias replicas de um servico, usando a carga anunciada no Discovery
+ * (power of two choices: das duas replicas sorteadas fica a menos carregada).
+ */
+class ReplicaSelector {
+
+    /**
+     * @param serviceDomain servico e dominio (format service.domain)
+     * @param uris          uris conhecidos do servico (pelo menos um)
+     * @return o uri escolhido
+     */
+    static URI choose(String serviceDomain, URI[] uris) {
+        if (uris.length == 1) return uris[0];
+
+        var random = ThreadLocalRandom.current();
+        int a = random.nextInt(uris.length);
+        int b = random.nextInt(uris.length - 1);
+        if (b >= a) b++;
+
+        Discovery discovery = Discovery.getInstance();
+        return compare(discovery.loadOf(serviceDomain, uris[a]), discovery.loadOf(serviceDomain, uris[b])) <= 0 ? uris[a] : uris[b];
+    }
+
+    /**
+     * Compara duas cargas pelo trabalho pendente e, em caso de empate, pela latencia.
+     * Uma replica sem carga conhecida e tratada como se estivesse livre.
+     */
+    private static int compare(Discovery.Load a, Discovery.Load b) {
+        int pa = a == null ? 0 : a.pressure(), pb = b == null ? 0 : b.pressure();
+        if (pa != pb) return Integer.compare(pa, pb);
+        return Integer.compare(a == null ? 0 : a.p99Millis, b == null ? 0 : b.p99Millis);
+    }
+}
@@ -0,0 +1,121 @@
+package sd2223.trab1.client;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Retry policy shared by the REST and SOAP clients, kept per server endpoint:
+ * <ul>
+ * <li>exponential backoff with jitter between attempts;</li>
+ * <li>a circuit breaker that, after consecutive failures, fails requests immediately
+ * for a while, and then lets a single probe through (closed, open, half-open);</li>
+ * <li>a retry budget, so that retries are at most a fraction of the successful requests.</li>
+ * </ul>
+ * Only failures to reach the server (timeouts, refused connections) count as failures;
+ * an error replied by the server does not.
+ */
+public class Resilience {
+    private static Logger Log = Logger.getLogger(Resilience.class.getName());
+
+    // Backoff of the first retry and maximum backoff, in ms
+    static final long BASE_BACKOFF = Long.getLong("feeds.retry.baseBackoff", 100);
+    static final long MAX_BACKOFF = Long.getLong("feeds.retry.maxBackoff", 3000);
+
+    // Consecutive failures that open the circuit, and how long it stays open, in ms
+    static final int FAILURE_THRESHOLD = Integer.getInteger("feeds.breaker.failures", 5);
+    static final long OPEN_TIME = Long.getLong("feeds.breaker.openTime", 5000);
+
+    // Retry budget: each success earns RETRY_RATIO retries, up to MAX_RETRY_TOKENS
+    static final double RETRY_RATIO = 0.1;
+    static final double MAX_RETRY_TOKENS = 10;
+
+    enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private static final Map<URI, Resilience> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * @return the retry policy of a server, shared by all the clients of that server
+     */
+    public static Resilience of(URI endpoint) {
+        return endpoints.computeIfAbsent(endpoint, Resilience::new);
+    }
+
+    private final URI endpoint;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntil;
+    private boolean probing;
+    private double retryTokens = MAX_RETRY_TOKENS;
+
+    private Resilience(URI endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @return false if the circuit is open and the request should fail without being made
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.CLOSED)
+            return true;
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() < openUntil)
+                return false;
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        // Half-open: let one probe go
+        if (probing)
+            return false;
+        probing = true;
+        return true;
+    }
+
+    /**
+     * @return true if a failed request may be retried, spending the retry budget
+     */
+    public synchronized boolean allowRetry() {
+        if (state != State.CLOSED || retryTokens < 1)
+            return false;
+        retryTokens -= 1;
+        return true;
+    }
+
+    /**
+     * Records that the server was reached.
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED)
+            Log.info("Circuit closed for: " + endpoint);
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+        retryTokens = Math.min(MAX_RETRY_TOKENS, retryTokens + RETRY_RATIO);
+    }
+
+    /**
+     * Records that the server could not be reached.
+     */
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= FAILURE_THRESHOLD) {
+            if (state != State.OPEN)
+                Log.info("Circuit open for: " + endpoint);
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + OPEN_TIME;
+            probing = false;
+        }
+    }
+
+    /**
+     * @param attempt number of the attempt that failed, starting at 0
+     * @return how long to wait before the next attempt: a random time between half and
+     * all of BASE_BACKOFF * 2^attempt, capped at MAX_BACKOFF
+     */
+    public long backoff(int attempt) {
+        long delay = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempt, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
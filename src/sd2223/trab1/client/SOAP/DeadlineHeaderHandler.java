@@ -0,0 +1,45 @@
+package sd2223.trab1.client.SOAP;
+
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPHandler;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+import sd2223.trab1.Deadline;
+
+import javax.xml.namespace.QName;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds the remaining Deadline of the current request to the HTTP headers of an outgoing SOAP call.
+ */
+class DeadlineHeaderHandler implements SOAPHandler<SOAPMessageContext> {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean handleMessage(SOAPMessageContext context) {
+        long remaining = Deadline.remainingMillis();
+        if ((Boolean) context.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY) && remaining != Deadline.NONE) {
+            var current = (Map<String, List<String>>) context.get(MessageContext.HTTP_REQUEST_HEADERS);
+            Map<String, List<String>> headers = current == null ? new HashMap<>() : new HashMap<>(current);
+            headers.put(Deadline.HEADER, List.of(String.valueOf(Math.max(0, remaining))));
+            context.put(MessageContext.HTTP_REQUEST_HEADERS, headers);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean handleFault(SOAPMessageContext context) {
+        return true;
+    }
+
+    @Override
+    public void close(MessageContext context) {
+    }
+
+    @Override
+    public Set<QName> getHeaders() {
+        return null;
+    }
+}
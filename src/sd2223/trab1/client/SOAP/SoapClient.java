@@ -3,12 +3,20 @@ package sd2223.trab1.client.SOAP;
 import com.sun.xml.ws.client.BindingProviderProperties;
 import jakarta.xml.ws.BindingProvider;
 import jakarta.xml.ws.WebServiceException;
+import sd2223.trab1.Deadline;
 import sd2223.trab1.api.java.Result;
 import sd2223.trab1.api.java.Result.ErrorCode;
+import sd2223.trab1.client.Resilience;
 
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static sd2223.trab1.api.java.Result.error;
@@ -28,38 +36,106 @@ abstract class SoapClient {
     protected static final int READ_TIMEOUT = 10000;
     protected static final int CONNECT_TIMEOUT = 10000;
     protected static final int MAX_RETRIES = 10;
-    protected static final int RETRY_SLEEP = 3000;
 
     private static Logger Log = Logger.getLogger(SoapClient.class.getName());
 
     protected static final String WSDL = "?wsdl";
 
+    // Maximum threads making async calls, and maximum async calls waiting for one of them
+    private static final int ASYNC_THREADS = Integer.getInteger("soap.async.threads", 64);
+    private static final int ASYNC_QUEUE = Integer.getInteger("soap.async.queue", 1024);
+
+    /**
+     * Threads that make the calls of the async variants. The stubs share the service interface
+     * with the servers, which has no JAX-WS async (Response/AsyncHandler) operations, so each
+     * pending async call still uses one of these threads, instead of one of the caller's.
+     * Both the threads and the queue are bounded, so that a slow peer cannot create unbounded
+     * threads: once they are full, further async calls fail at once with TIMEOUT.
+     */
+    private static final ThreadPoolExecutor ASYNC_CALLS = newAsyncCalls();
+
+    private static ThreadPoolExecutor newAsyncCalls() {
+        var pool = new ThreadPoolExecutor(ASYNC_THREADS, ASYNC_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(ASYNC_QUEUE), r -> {
+            Thread t = new Thread(r, "soap-client-async");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     protected final URI uri;
+    protected final int maxRetries;
+    protected final Resilience resilience;
 
     public SoapClient(URI uri) {
+        this(uri, MAX_RETRIES);
+    }
+
+    public SoapClient(URI uri, int maxRetries) {
         this.uri = uri;
+        this.maxRetries = maxRetries;
+        this.resilience = Resilience.of(uri);
     }
 
+    /**
+     * Sets the timeouts of the next call made with the stub, shrunk to the remaining Deadline of the current request.
+     */
     protected void setTimeouts(BindingProvider port) {
-        port.getRequestContext().put(BindingProviderProperties.CONNECT_TIMEOUT, CONNECT_TIMEOUT);
-        port.getRequestContext().put(BindingProviderProperties.REQUEST_TIMEOUT, READ_TIMEOUT);
+        long remaining = Deadline.remainingMillis();
+        int timeout = remaining == Deadline.NONE ? READ_TIMEOUT : (int) Math.max(1, Math.min(READ_TIMEOUT, remaining));
+        port.getRequestContext().put(BindingProviderProperties.CONNECT_TIMEOUT, Math.min(CONNECT_TIMEOUT, timeout));
+        port.getRequestContext().put(BindingProviderProperties.REQUEST_TIMEOUT, timeout);
+    }
+
+    /**
+     * Sends the remaining Deadline of the current request in the HTTP headers of every call.
+     */
+    protected void propagateDeadline(BindingProvider port) {
+        port.getBinding().setHandlerChain(List.of(new DeadlineHeaderHandler()));
     }
 
     protected <T> Result<T> reTry(ResultSupplier<Result<T>> func) {
-        for (int i = 0; i < MAX_RETRIES; i++)
+        for (int i = 0; i < maxRetries; i++) {
+            // Deadline spent: whoever made the request already gave up on it
+            // Circuit open: the server is down, fail without waiting for it
+            // (the deadline is checked first, because allowRequest takes the half-open probe)
+            if (Deadline.remainingMillis() <= 0 || !resilience.allowRequest())
+                break;
             try {
-                return func.get();
+                Result<T> result = func.get();
+                resilience.onSuccess();
+                return result;
             } catch (WebServiceException x) {
                 x.printStackTrace();
                 Log.fine("Timeout: " + x.getMessage());
-                sleep_ms(RETRY_SLEEP);
+                resilience.onFailure();
+                long backoff = resilience.backoff(i);
+                if (i == maxRetries - 1 || backoff >= Deadline.remainingMillis() || !resilience.allowRetry())
+                    break;
+                sleep_ms(backoff);
             } catch (Exception x) {
+                // Not a failure to reach the server: must not leave the circuit half-open
+                resilience.onSuccess();
                 x.printStackTrace();
                 return Result.error(ErrorCode.INTERNAL_ERROR);
             }
+        }
         return Result.error(ErrorCode.TIMEOUT);
     }
 
+    protected <T> CompletableFuture<Result<T>> reTryAsync(ResultSupplier<Result<T>> func) {
+        Deadline deadline = Deadline.current();
+        try {
+            return CompletableFuture.supplyAsync(() -> Deadline.with(deadline, () -> reTry(func)), ASYNC_CALLS);
+        } catch (RejectedExecutionException x) {
+            // Too many async calls pending: shed this one instead of queueing it without limit
+            Log.fine("Async call rejected: " + uri);
+            return CompletableFuture.completedFuture(Result.error(ErrorCode.TIMEOUT));
+        }
+    }
+
     protected <R> Result<R> toJavaResult(ResultSupplier<R> supplier) {
         try {
             return ok(supplier.get());
@@ -111,7 +187,7 @@ abstract class SoapClient {
         return null;
     }
 
-    private void sleep_ms(int ms) {
+    private void sleep_ms(long ms) {
         try {
             Thread.sleep(ms);
         } catch (InterruptedException e) {
@@ -2,7 +2,11 @@ package sd2223.trab1.client.SOAP;
 
 import jakarta.xml.ws.BindingProvider;
 import jakarta.xml.ws.Service;
+import sd2223.trab1.api.FeedPage;
 import sd2223.trab1.api.Message;
+import sd2223.trab1.api.PropagatedMessage;
+import sd2223.trab1.api.SyncDigest;
+import sd2223.trab1.api.SyncRepair;
 import sd2223.trab1.api.java.Feeds;
 import sd2223.trab1.api.java.Result;
 import sd2223.trab1.api.soap.FeedsService;
@@ -10,24 +14,41 @@ import sd2223.trab1.api.soap.FeedsService;
 import javax.xml.namespace.QName;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class SoapFeedsClient extends SoapClient implements Feeds {
     public SoapFeedsClient(URI serverURI) {
         super(serverURI);
     }
 
-    private FeedsService stub;
+    public SoapFeedsClient(URI serverURI, int maxRetries) {
+        super(serverURI, maxRetries);
+    }
+
+    private Service service;
+
+    // The timeouts are in the request context of the stub, so each thread has a stub of its own
+    private final ThreadLocal<FeedsService> stubs = new ThreadLocal<>();
 
-    synchronized private FeedsService stub() {
+    private FeedsService stub() {
+        FeedsService stub = stubs.get();
         if (stub == null) {
-            QName QNAME = new QName(FeedsService.NAMESPACE, FeedsService.NAME);
-            Service service = Service.create(super.toURL(super.uri + WSDL), QNAME);
-            this.stub = service.getPort(sd2223.trab1.api.soap.FeedsService.class);
-            super.setTimeouts((BindingProvider) stub);
+            stub = service().getPort(sd2223.trab1.api.soap.FeedsService.class);
+            super.propagateDeadline((BindingProvider) stub);
+            stubs.set(stub);
         }
+        super.setTimeouts((BindingProvider) stub);
         return stub;
     }
 
+    synchronized private Service service() {
+        if (service == null) {
+            QName QNAME = new QName(FeedsService.NAMESPACE, FeedsService.NAME);
+            this.service = Service.create(super.toURL(super.uri + WSDL), QNAME);
+        }
+        return service;
+    }
+
     @Override
     public Result<Long> postMessage(String user, String pwd, Message msg) {
         return super.reTry(() -> super.toJavaResult(() -> stub().postMessage(user, pwd, msg)));
@@ -48,6 +69,16 @@ public class SoapFeedsClient extends SoapClient implements Feeds {
         return super.reTry(() -> super.toJavaResult(() -> stub().getMessages(user, time)));
     }
 
+    @Override
+    public Result<FeedPage> getMessagesPage(String user, long time, int limit, String cursor) {
+        return super.reTry(() -> super.toJavaResult(() -> stub().getMessagesPage(user, time, limit, cursor)));
+    }
+
+    @Override
+    public Result<List<Message>> pollMessages(String user, long time, long timeout) {
+        return super.reTry(() -> super.toJavaResult(() -> stub().pollMessages(user, time, timeout)));
+    }
+
     @Override
     public Result<Void> subUser(String user, String userSub, String pwd) {
         return super.reTry(() -> super.toJavaResult(() -> stub().subUser(user, userSub, pwd)));
@@ -83,5 +114,100 @@ public class SoapFeedsClient extends SoapClient implements Feeds {
         return super.reTry(() -> super.toJavaResult(() -> stub().propagateMsg(users, msg)));
     }
 
+    @Override
+    public Result<Void> propagateMsgs(List<PropagatedMessage> batch) {
+        return super.reTry(() -> super.toJavaResult(() -> stub().propagateMsgs(batch)));
+    }
+
+    @Override
+    public Result<Void> invalidateUser(String user, String secret) {
+        return super.reTry(() -> super.toJavaResult(() -> stub().invalidateUser(user, secret)));
+    }
+
+    @Override
+    public Result<SyncRepair> syncFeeds(SyncDigest digest) {
+        return super.reTry(() -> super.toJavaResult(() -> stub().syncFeeds(digest)));
+    }
+
+
+    @Override
+    public CompletableFuture<Result<Long>> postMessageAsync(String user, String pwd, Message msg) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().postMessage(user, pwd, msg)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> removeFromPersonalFeedAsync(String user, long mid, String pwd) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().removeFromPersonalFeed(user, mid, pwd)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Message>> getMessageAsync(String user, long mid) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().getMessage(user, mid)));
+    }
+
+    @Override
+    public CompletableFuture<Result<List<Message>>> getMessagesAsync(String user, long time) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().getMessages(user, time)));
+    }
+
+    @Override
+    public CompletableFuture<Result<FeedPage>> getMessagesPageAsync(String user, long time, int limit, String cursor) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().getMessagesPage(user, time, limit, cursor)));
+    }
+
+    @Override
+    public CompletableFuture<Result<List<Message>>> pollMessagesAsync(String user, long time, long timeout) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().pollMessages(user, time, timeout)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> subUserAsync(String user, String userSub, String pwd) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().subUser(user, userSub, pwd)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> unsubscribeUserAsync(String user, String userSub, String pwd) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().unsubscribeUser(user, userSub, pwd)));
+    }
+
+    @Override
+    public CompletableFuture<Result<List<String>>> listSubsAsync(String user) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().listSubs(user)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> deleteUserFeedAsync(String user) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().deleteUserFeed(user)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> propagateSubAsync(String user, String userSub) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().propagateSub(user, userSub)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> propagateUnsubAsync(String user, String userSub) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().propagateUnsub(user, userSub)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> propagateMsgAsync(String[] users, Message msg) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().propagateMsg(users, msg)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> propagateMsgsAsync(List<PropagatedMessage> batch) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().propagateMsgs(batch)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> invalidateUserAsync(String user, String secret) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().invalidateUser(user, secret)));
+    }
+
+    @Override
+    public CompletableFuture<Result<SyncRepair>> syncFeedsAsync(SyncDigest digest) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().syncFeeds(digest)));
+    }
 
 }
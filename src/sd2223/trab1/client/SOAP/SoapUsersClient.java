@@ -10,6 +10,7 @@ import sd2223.trab1.api.soap.UsersService;
 import javax.xml.namespace.QName;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class SoapUsersClient extends SoapClient implements Users {
 
@@ -17,18 +18,30 @@ public class SoapUsersClient extends SoapClient implements Users {
         super(serverURI);
     }
 
-    private UsersService stub;
+    private Service service;
 
-    synchronized private UsersService stub() {
+    // The timeouts are in the request context of the stub, so each thread has a stub of its own
+    private final ThreadLocal<UsersService> stubs = new ThreadLocal<>();
+
+    private UsersService stub() {
+        UsersService stub = stubs.get();
         if (stub == null) {
-            QName QNAME = new QName(UsersService.NAMESPACE, UsersService.NAME);
-            Service service = Service.create(super.toURL(super.uri + WSDL), QNAME);
-            this.stub = service.getPort(sd2223.trab1.api.soap.UsersService.class);
-            super.setTimeouts((BindingProvider) stub);
+            stub = service().getPort(sd2223.trab1.api.soap.UsersService.class);
+            super.propagateDeadline((BindingProvider) stub);
+            stubs.set(stub);
         }
+        super.setTimeouts((BindingProvider) stub);
         return stub;
     }
 
+    synchronized private Service service() {
+        if (service == null) {
+            QName QNAME = new QName(UsersService.NAMESPACE, UsersService.NAME);
+            this.service = Service.create(super.toURL(super.uri + WSDL), QNAME);
+        }
+        return service;
+    }
+
     @Override
     public Result<String> createUser(User user) {
         return super.reTry(() -> super.toJavaResult(() -> stub().createUser(user)));
@@ -65,4 +78,39 @@ public class SoapUsersClient extends SoapClient implements Users {
     }
 
 
-}
\ No newline at end of file
+    @Override
+    public CompletableFuture<Result<String>> createUserAsync(User user) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().createUser(user)));
+    }
+
+    @Override
+    public CompletableFuture<Result<User>> getUserAsync(String name, String pwd) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().getUser(name, pwd)));
+    }
+
+    @Override
+    public CompletableFuture<Result<User>> updateUserAsync(String name, String pwd, User user) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().updateUser(name, pwd, user)));
+    }
+
+    @Override
+    public CompletableFuture<Result<User>> deleteUserAsync(String name, String pwd) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().deleteUser(name, pwd)));
+    }
+
+    @Override
+    public CompletableFuture<Result<List<User>>> searchUsersAsync(String pattern) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().searchUsers(pattern)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> verifyPasswordAsync(String name, String pwd) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().verifyPassword(name, pwd)));
+    }
+
+    @Override
+    public CompletableFuture<Result<Void>> checkUserAsync(String name) {
+        return super.reTryAsync(() -> super.toJavaResult(() -> stub().checkUser(name)));
+    }
+
+}
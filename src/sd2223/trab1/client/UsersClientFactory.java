@@ -1,11 +1,18 @@
 package sd2223.trab1.client;
 
 import sd2223.trab1.Discovery;
+import sd2223.trab1.api.java.Result;
 import sd2223.trab1.api.java.Users;
 import sd2223.trab1.client.REST.RestUsersClient;
 import sd2223.trab1.client.SOAP.SoapUsersClient;
 
 import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public class UsersClientFactory {
     private static final String SERVICE = "users";
@@ -13,11 +20,88 @@ public class UsersClientFactory {
     private static final String SOAP = "/soap";
     private static final int MIN_REPLIES = 1;
 
-    public static Users get(String domain) {
-        Discovery discovery = Discovery.getInstance();
+    /**
+     * Clientes reutilizados entre pedidos.
+     * URI -> uri do servidor; Users -> cliente
+     */
+    private static final Map<URI, Users> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Dominios cujas alteracoes de uris ja estao a ser seguidas no Discovery.
+     */
+    private static final Set<String> watched = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Descarta os clientes ligados a um uri que deixou de ser anunciado, para que o proximo
+     * pedido nao falhe num servidor que ja nao existe.
+     */
+    private static final Discovery.MembershipListener listener = new Discovery.MembershipListener() {
+        @Override
+        public void uriAdded(String serviceDomain, URI uri) {
+        }
+
+        @Override
+        public void uriRemoved(String serviceDomain, URI uri) {
+            clients.remove(uri);
+        }
+    };
+
+    /**
+     * Verifica se um user existe, com hedging entre as replicas do dominio.
+     *
+     * @param domain dominio do user
+     * @param name   nome do user
+     * @return resultado do pedido
+     */
+    public static Result<Void> checkUser(String domain, String name) {
+        return hedged("checkUser", domain, users -> users.checkUserAsync(name), users -> users.checkUser(name));
+    }
+
+    /**
+     * Verifica a password de um user, com hedging entre as replicas do dominio.
+     *
+     * @param domain dominio do user
+     * @param name   nome do user
+     * @param pwd    password
+     * @return resultado do pedido
+     */
+    public static Result<Void> verifyPassword(String domain, String name, String pwd) {
+        return hedged("verifyPassword", domain, users -> users.verifyPasswordAsync(name, pwd), users -> users.verifyPassword(name, pwd));
+    }
+
+    /**
+     * Faz um pedido ao servidor de users do dominio, com hedging se estiver ativado.
+     *
+     * @param call     pedido assincrono, usado com hedging
+     * @param syncCall pedido bloqueante, feito nesta thread quando nao ha hedging
+     */
+    private static <T> Result<T> hedged(String op, String domain, Function<Users, CompletableFuture<Result<T>>> call,
+                                        Function<Users, Result<T>> syncCall) {
         String serviceDomain = SERVICE + "." + domain;
-        URI[] uris = discovery.knownUrisOf(serviceDomain, MIN_REPLIES);
-        URI serverURI = uris[0];
+        URI[] uris;
+        try {
+            // A espera pela descoberta do dominio e limitada pelo Deadline do pedido: TIMEOUT se nao for descoberto a tempo
+            uris = urisOf(serviceDomain).join();
+        } catch (CompletionException x) {
+            return Result.error(Result.ErrorCode.TIMEOUT);
+        }
+        if (!Hedging.ENABLED || uris.length < 2)
+            return syncCall.apply(clientOf(ReplicaSelector.choose(serviceDomain, uris)));
+        return Hedging.call(op, serviceDomain, uris, uri -> call.apply(clientOf(uri))).join();
+    }
+
+    private static Users clientOf(URI serverURI) {
+        return clients.computeIfAbsent(serverURI, UsersClientFactory::newClient);
+    }
+
+    private static CompletableFuture<URI[]> urisOf(String serviceDomain) {
+        Discovery discovery = Discovery.getInstance();
+        if (watched.add(serviceDomain))
+            discovery.subscribe(serviceDomain, listener);
+        return discovery.knownUrisOfAsync(serviceDomain, MIN_REPLIES);
+    }
+
+    private static Users newClient(URI serverURI) {
         var uriString = serverURI.toString();
 
         if (uriString.endsWith(REST))
@@ -0,0 +1,25 @@
+package sd2223.trab1.server.REST;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.ext.Provider;
+import sd2223.trab1.Deadline;
+
+/**
+ * Sets the Deadline of every REST request from its header, for the calls it makes to other servers.
+ */
+@Provider
+public class DeadlineFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        Deadline.begin(request.getHeaderString(Deadline.HEADER));
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Deadline.end();
+    }
+}
@@ -1,7 +1,11 @@
 package sd2223.trab1.server.REST.Feeds;
 
 import jakarta.inject.Singleton;
+import sd2223.trab1.api.FeedPage;
 import sd2223.trab1.api.Message;
+import sd2223.trab1.api.PropagatedMessage;
+import sd2223.trab1.api.SyncDigest;
+import sd2223.trab1.api.SyncRepair;
 import sd2223.trab1.api.java.Feeds;
 import sd2223.trab1.api.rest.FeedsService;
 import sd2223.trab1.server.REST.RestResource;
@@ -32,6 +36,13 @@ public class RestFeedsResource extends RestResource implements FeedsService {
         super.fromJavaResult(impl.removeFromPersonalFeed(user, mid, pwd));
     }
 
+    /*
+     * The remote reads of getMessage/getMessages are asynchronous, but this thread still waits
+     * for them: the JDK HTTP container cannot suspend a request (AsyncResponse or a CompletionStage
+     * return type throw UnsupportedOperationException), so the request thread is only released
+     * while the remote read is in flight when it is a virtual thread (-Dfeeds.threads=virtual).
+     */
+
     @Override
     public Message getMessage(String user, long mid) {
         return super.fromJavaResult(impl.getMessage(user, mid));
@@ -42,6 +53,16 @@ public class RestFeedsResource extends RestResource implements FeedsService {
         return super.fromJavaResult(impl.getMessages(user, time));
     }
 
+    @Override
+    public FeedPage getMessagesPage(String user, long time, int limit, String cursor) {
+        return super.fromJavaResult(impl.getMessagesPage(user, time, limit, cursor));
+    }
+
+    @Override
+    public List<Message> pollMessages(String user, long time, long timeout) {
+        return super.fromJavaResult(impl.pollMessages(user, time, timeout));
+    }
+
     @Override
     public void subUser(String user, String userSub, String pwd) {
         super.fromJavaResult(impl.subUser(user, userSub, pwd));
@@ -77,5 +98,20 @@ public class RestFeedsResource extends RestResource implements FeedsService {
         super.fromJavaResult(impl.propagateMsg(users, msg));
     }
 
+    @Override
+    public void propagateMsgs(List<PropagatedMessage> batch) {
+        super.fromJavaResult(impl.propagateMsgs(batch));
+    }
+
+    @Override
+    public void invalidateUser(String user, String secret) {
+        super.fromJavaResult(impl.invalidateUser(user, secret));
+    }
+
+    @Override
+    public SyncRepair syncFeeds(SyncDigest digest) {
+        return super.fromJavaResult(impl.syncFeeds(digest));
+    }
+
 
 }
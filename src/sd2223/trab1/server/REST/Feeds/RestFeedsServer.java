@@ -3,6 +3,10 @@ package sd2223.trab1.server.REST.Feeds;
 import org.glassfish.jersey.jdkhttp.JdkHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
 import sd2223.trab1.Discovery;
+import sd2223.trab1.server.REST.DeadlineFilter;
+import sd2223.trab1.server.REST.LoadFilter;
+import sd2223.trab1.server.ServerLoad;
+import sd2223.trab1.server.ServerThreads;
 import sd2223.trab1.server.REST.Users.RestUsersServer;
 
 import java.net.InetAddress;
@@ -28,14 +32,20 @@ public class RestFeedsServer {
         try {
             ResourceConfig config = new ResourceConfig();
             RestFeedsResource obj = new RestFeedsResource(domain, id);
-            config.register(obj.getClass());
+            config.register(obj);
+            config.register(LoadFilter.class);
+            config.register(DeadlineFilter.class);
             // config.register(CustomLoggingFilter.class);
             String ip = InetAddress.getLocalHost().getHostAddress();
             String serverURI = String.format(SERVER_URI_FMT, ip, PORT);
-            JdkHttpServerFactory.createHttpServer(URI.create(serverURI), config);
+            var server = JdkHttpServerFactory.createHttpServer(URI.create(serverURI), config, false);
+            var requests = ServerThreads.newRequestExecutor();
+            if (requests != null)
+                server.setExecutor(requests);
+            server.start();
 
             Discovery discovery = Discovery.getInstance();
-            discovery.announce(domain, SERVICE, serverURI);
+            discovery.announce(domain, SERVICE, serverURI, ServerLoad::current);
         } catch (Exception e) {
             Log.severe(e.getMessage());
         }
@@ -0,0 +1,29 @@
+package sd2223.trab1.server.REST;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.ext.Provider;
+import sd2223.trab1.server.ServerLoad;
+
+/**
+ * Accounts every REST request in the ServerLoad of this server.
+ */
+@Provider
+public class LoadFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String START = LoadFilter.class.getName() + ".start";
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        request.setProperty(START, ServerLoad.begin());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object start = request.getProperty(START);
+        if (start != null)
+            ServerLoad.end((Long) start);
+    }
+}
@@ -0,0 +1,54 @@
+package sd2223.trab1.server.SOAP;
+
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPHandler;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+import sd2223.trab1.Deadline;
+
+import javax.xml.namespace.QName;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sets the Deadline of every SOAP request from its HTTP header, for the calls it makes to other servers.
+ */
+public class DeadlineHandler implements SOAPHandler<SOAPMessageContext> {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean handleMessage(SOAPMessageContext context) {
+        if (!(Boolean) context.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY)) {
+            var headers = (Map<String, List<String>>) context.get(MessageContext.HTTP_REQUEST_HEADERS);
+            Deadline.begin(headerOf(headers));
+        } else
+            Deadline.end();
+        return true;
+    }
+
+    @Override
+    public boolean handleFault(SOAPMessageContext context) {
+        Deadline.end();
+        return true;
+    }
+
+    @Override
+    public void close(MessageContext context) {
+    }
+
+    @Override
+    public Set<QName> getHeaders() {
+        return null;
+    }
+
+    /**
+     * HTTP header names are case insensitive.
+     */
+    private static String headerOf(Map<String, List<String>> headers) {
+        if (headers == null) return null;
+        for (var e : headers.entrySet())
+            if (Deadline.HEADER.equalsIgnoreCase(e.getKey()) && e.getValue() != null && !e.getValue().isEmpty())
+                return e.getValue().get(0);
+        return null;
+    }
+}
@@ -2,8 +2,13 @@ package sd2223.trab1.server.SOAP.Feeds;
 
 import jakarta.xml.ws.Endpoint;
 import sd2223.trab1.Discovery;
+import sd2223.trab1.server.SOAP.DeadlineHandler;
+import sd2223.trab1.server.SOAP.LoadHandler;
+import sd2223.trab1.server.ServerLoad;
+import sd2223.trab1.server.ServerThreads;
 
 import java.net.InetAddress;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,10 +35,15 @@ public class SoapFeedsServer {
         String ip = InetAddress.getLocalHost().getHostAddress();
         String serverURI = String.format(SERVER_BASE_URI, ip, PORT);
 
-        Endpoint.publish(serverURI.replace(ip, "0.0.0.0"), new SoapFeedsWebService(domain, id));
+        Endpoint endpoint = Endpoint.create(new SoapFeedsWebService(domain, id));
+        endpoint.getBinding().setHandlerChain(List.of(new LoadHandler(), new DeadlineHandler()));
+        var requests = ServerThreads.newRequestExecutor();
+        if (requests != null)
+            endpoint.setExecutor(requests);
+        endpoint.publish(serverURI.replace(ip, "0.0.0.0"));
 
         Discovery discovery = Discovery.getInstance();
-        discovery.announce(domain, SERVICE_NAME, serverURI);
+        discovery.announce(domain, SERVICE_NAME, serverURI, ServerLoad::current);
 
         Log.info(String.format("%s Soap Server ready @ %s\n", SERVICE_NAME, serverURI));
     }
@@ -1,7 +1,11 @@
 package sd2223.trab1.server.SOAP.Feeds;
 
 import jakarta.jws.WebService;
+import sd2223.trab1.api.FeedPage;
 import sd2223.trab1.api.Message;
+import sd2223.trab1.api.PropagatedMessage;
+import sd2223.trab1.api.SyncDigest;
+import sd2223.trab1.api.SyncRepair;
 import sd2223.trab1.api.java.Feeds;
 import sd2223.trab1.api.soap.FeedsException;
 import sd2223.trab1.api.soap.FeedsService;
@@ -33,6 +37,13 @@ public class SoapFeedsWebService extends SoapWebService<FeedsException> implemen
         super.fromJavaResult(impl.removeFromPersonalFeed(user, mid, pwd));
     }
 
+    /*
+     * The remote reads of getMessage/getMessages are asynchronous, but this thread still waits
+     * for them: JAX-WS only completes requests asynchronously for Provider endpoints (AsyncProvider),
+     * not for a service interface like this one, so the request thread is only released while the
+     * remote read is in flight when it is a virtual thread (-Dfeeds.threads=virtual).
+     */
+
     @Override
     public Message getMessage(String user, long mid) throws FeedsException {
         return super.fromJavaResult(impl.getMessage(user, mid));
@@ -43,6 +54,16 @@ public class SoapFeedsWebService extends SoapWebService<FeedsException> implemen
         return super.fromJavaResult(impl.getMessages(user, time));
     }
 
+    @Override
+    public FeedPage getMessagesPage(String user, long time, int limit, String cursor) throws FeedsException {
+        return super.fromJavaResult(impl.getMessagesPage(user, time, limit, cursor));
+    }
+
+    @Override
+    public List<Message> pollMessages(String user, long time, long timeout) throws FeedsException {
+        return super.fromJavaResult(impl.pollMessages(user, time, timeout));
+    }
+
     @Override
     public void subUser(String user, String userSub, String pwd) throws FeedsException {
         super.fromJavaResult(impl.subUser(user, userSub, pwd));
@@ -77,6 +98,21 @@ public class SoapFeedsWebService extends SoapWebService<FeedsException> implemen
     public void propagateMsg(String[] users, Message msg) throws FeedsException {
         super.fromJavaResult(impl.propagateMsg(users, msg));
     }
+
+    @Override
+    public void propagateMsgs(List<PropagatedMessage> batch) throws FeedsException {
+        super.fromJavaResult(impl.propagateMsgs(batch));
+    }
+
+    @Override
+    public void invalidateUser(String user, String secret) throws FeedsException {
+        super.fromJavaResult(impl.invalidateUser(user, secret));
+    }
+
+    @Override
+    public SyncRepair syncFeeds(SyncDigest digest) throws FeedsException {
+        return super.fromJavaResult(impl.syncFeeds(digest));
+    }
     
 
 }
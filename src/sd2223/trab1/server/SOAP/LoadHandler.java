@@ -0,0 +1,47 @@
+package sd2223.trab1.server.SOAP;
+
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPHandler;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+import sd2223.trab1.server.ServerLoad;
+
+import javax.xml.namespace.QName;
+import java.util.Set;
+
+/**
+ * Accounts every SOAP request in the ServerLoad of this server.
+ */
+public class LoadHandler implements SOAPHandler<SOAPMessageContext> {
+
+    private static final String START = LoadHandler.class.getName() + ".start";
+
+    @Override
+    public boolean handleMessage(SOAPMessageContext context) {
+        if (!(Boolean) context.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY))
+            context.put(START, ServerLoad.begin());
+        else
+            end(context);
+        return true;
+    }
+
+    @Override
+    public boolean handleFault(SOAPMessageContext context) {
+        end(context);
+        return true;
+    }
+
+    @Override
+    public void close(MessageContext context) {
+    }
+
+    @Override
+    public Set<QName> getHeaders() {
+        return null;
+    }
+
+    private void end(SOAPMessageContext context) {
+        Object start = context.remove(START);
+        if (start != null)
+            ServerLoad.end((Long) start);
+    }
+}
@@ -0,0 +1,64 @@
+package sd2223.trab1.server;
+
+import sd2223.trab1.Discovery;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Measures the load of this server (requests in flight, queued work and recent latency),
+ * so that it can be carried by the Discovery announcements.
+ */
+public class ServerLoad {
+
+    // Number of recent request latencies used to estimate the p99 (must be a power of 2)
+    private static final int WINDOW = 1024;
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger next = new AtomicInteger();
+    private static final int[] latencies = new int[WINDOW];
+    private static volatile IntSupplier queueDepth = () -> 0;
+
+    /**
+     * Called when a request starts being handled.
+     *
+     * @return the start time, to be passed to end
+     */
+    public static long begin() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Called when a request has been handled.
+     *
+     * @param start the value returned by begin
+     */
+    public static void end(long start) {
+        inFlight.decrementAndGet();
+        int millis = (int) Math.min(Integer.MAX_VALUE, (System.nanoTime() - start) / 1_000_000);
+        latencies[next.getAndIncrement() & (WINDOW - 1)] = millis;
+    }
+
+    /**
+     * Sets the source of the number of tasks waiting in the server queues.
+     */
+    public static void setQueueDepth(IntSupplier depth) {
+        queueDepth = depth;
+    }
+
+    /**
+     * @return the current load, as announced by Discovery
+     */
+    public static Discovery.Load current() {
+        int n = Math.min(next.get(), WINDOW);
+        int p99 = 0;
+        if (n > 0) {
+            int[] sorted = Arrays.copyOf(latencies, n);
+            Arrays.sort(sorted);
+            p99 = sorted[Math.min(n - 1, (int) Math.ceil(n * 0.99) - 1)];
+        }
+        return new Discovery.Load(inFlight.get(), queueDepth.getAsInt(), p99);
+    }
+}
@@ -0,0 +1,35 @@
+package sd2223.trab1.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * The secret shared by the servers of a deployment, that authenticates the operations only other
+ * servers may call, such as invalidating the caches of a feeds server.
+ * <p>
+ * Set with -Dfeeds.secret=... on every server. Without it those operations are refused, and the
+ * caches they would invalidate only expire with their TTL.
+ */
+public class ServerSecret {
+
+    public static final String PROPERTY = "feeds.secret";
+
+    private static final String SECRET = System.getProperty(PROPERTY);
+
+    /**
+     * @return the secret to send in calls to other servers, or null if none is configured
+     */
+    public static String get() {
+        return SECRET;
+    }
+
+    /**
+     * @return true if a secret is configured and the given one is equal to it
+     */
+    public static boolean matches(String secret) {
+        if (SECRET == null || secret == null)
+            return false;
+        // Compared in constant time, so that the time taken does not reveal how much of it is right
+        return MessageDigest.isEqual(SECRET.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,75 @@
+package sd2223.trab1.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Chooses the threads that handle requests and run the blocking remote calls of the servers.
+ * <p>
+ * With -Dfeeds.threads=virtual, and when running on a JDK with virtual threads (21+), every
+ * request and every propagation task gets its own virtual thread, so a call to a slow remote
+ * domain no longer holds one of a few platform threads. Otherwise platform thread pools are used.
+ * <p>
+ * The move of the build to a JDK with virtual threads is NOT delivered: the pom targets Java 17,
+ * which is what the Docker base image (nunopreguica/sd2223tpbase) and the build environment provide.
+ * Virtual threads are therefore looked up at runtime, and in the shipped image -Dfeeds.threads=virtual
+ * falls back to platform threads, logging a warning. It only takes effect when the jar is run on a 21+ JDK.
+ */
+public class ServerThreads {
+    private static Logger Log = Logger.getLogger(ServerThreads.class.getName());
+
+    public static final String MODE_PROPERTY = "feeds.threads";
+    public static final String VIRTUAL = "virtual";
+
+    // Executors.newVirtualThreadPerTaskExecutor(), if requested and available
+    private static final MethodHandle NEW_VIRTUAL_EXECUTOR = lookupVirtualExecutor();
+
+    private static MethodHandle lookupVirtualExecutor() {
+        if (!VIRTUAL.equalsIgnoreCase(System.getProperty(MODE_PROPERTY)))
+            return null;
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (ReflectiveOperationException x) {
+            Log.warning("Virtual threads are not available in Java " + Runtime.version().feature() + ", using platform threads");
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the servers run on virtual threads
+     */
+    public static boolean isVirtual() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Creates the executor of the requests received by an HTTP server.
+     *
+     * @return a virtual thread per task executor, or null to keep the server's default executor
+     */
+    public static ExecutorService newRequestExecutor() {
+        return isVirtual() ? newVirtualExecutor() : null;
+    }
+
+    /**
+     * Creates the executor of blocking background work, such as calls to remote domains.
+     *
+     * @param platformThreads number of threads when not using virtual threads
+     */
+    public static ExecutorService newTaskExecutor(int platformThreads) {
+        return isVirtual() ? newVirtualExecutor() : Executors.newFixedThreadPool(platformThreads);
+    }
+
+    private static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invokeExact();
+        } catch (Throwable x) {
+            throw new IllegalStateException(x);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package sd2223.trab1.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the propagation executor with many slow remote domains: each task simulates a
+ * blocking call that takes latency ms to answer, and the throughput is the number of tasks
+ * completed per second.
+ * <p>
+ * The executor is the one JavaFeeds uses, ServerThreads.newTaskExecutor(cores), so the mode
+ * reported is the one actually in effect (-Dfeeds.threads=virtual needs a 21+ JDK). It is compared
+ * with one platform thread per task, the concurrency that virtual threads give without the cost of
+ * platform threads.
+ * <p>
+ * java -cp target/classes:DEPS [-Dfeeds.threads=virtual] sd2223.trab1.server.ServerThreadsBenchmark [tasks] [latencyMs]
+ */
+public class ServerThreadsBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("java=%d tasks=%d latency=%dms cores=%d mode=%s%n", Runtime.version().feature(), tasks, latency,
+                cores, ServerThreads.isVirtual() ? "virtual threads" : "platform pool of " + cores);
+
+        run("newTaskExecutor", ServerThreads.newTaskExecutor(cores), tasks, latency);
+        run("thread per task", Executors.newCachedThreadPool(), tasks, latency);
+    }
+
+    private static void run(String name, ExecutorService executor, int tasks, long latency) throws Exception {
+        var threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        var done = new CountDownLatch(tasks);
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++)
+            executor.execute(() -> {
+                try {
+                    Thread.sleep(latency); // the slow remote domain
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.printf("%s  %,10.0f tasks/s  %,8d ms total  peak threads=%d%n", name, tasks * 1e9 / elapsed,
+                elapsed / 1_000_000, threads.getPeakThreadCount());
+    }
+}
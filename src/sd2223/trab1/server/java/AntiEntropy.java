@@ -0,0 +1,117 @@
+package sd2223.trab1.server.java;
+
+import sd2223.trab1.api.SyncDigest;
+import sd2223.trab1.api.SyncRepair;
+import sd2223.trab1.api.java.Result;
+import sd2223.trab1.client.FeedsClientFactory;
+import sd2223.trab1.server.ServerLoad;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Anti-entropy entre servidores de feeds: periodicamente envia a um dos dominios seguidos pelos
+ * users deste servidor o digest do que recebeu dos seus autores, e aplica as diferencas devolvidas
+ * (msgs em falta e seguidores que divergem).
+ * <p>
+ * Repara o que a propagacao normal perdeu, por exemplo quando um dominio esteve inacessivel.
+ * Para nao competir com o trafego normal corre numa so thread, sincroniza um dominio de cada
+ * vez, faz uma so tentativa e salta a ronda quando o servidor esta ocupado.
+ * O pedido e assincrono, com a descoberta do dominio limitada no tempo: um dominio morto ou
+ * que expirou e saltado, e a ronda seguinte passa ao proximo dominio.
+ */
+class AntiEntropy {
+
+    private static Logger Log = Logger.getLogger(AntiEntropy.class.getName());
+
+    /**
+     * Numero de tentativas de cada pedido de sincronizacao; a proxima ronda e a nova tentativa.
+     */
+    private static final int SYNC_RETRIES = 1;
+
+    private final int maxPressure;
+    private final Supplier<Collection<String>> domains;
+    private final Function<String, SyncDigest> digest;
+    private final BiConsumer<String, SyncRepair> repair;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "anti-entropy");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Numero da proxima ronda, para escolher os dominios de forma rotativa.
+     */
+    private int round;
+
+    /**
+     * Se a sincronizacao da ronda anterior ainda nao terminou.
+     */
+    private final AtomicBoolean syncing = new AtomicBoolean();
+
+    /**
+     * @param periodMs    intervalo entre rondas em ms (0 desativa a sincronizacao)
+     * @param maxPressure carga (pedidos em curso e em fila) acima da qual a ronda e saltada
+     * @param domains     dominios com que sincronizar
+     * @param digest      calcula o digest a enviar a um dominio
+     * @param repair      aplica as diferencas devolvidas por um dominio
+     */
+    AntiEntropy(long periodMs, int maxPressure, Supplier<Collection<String>> domains,
+                Function<String, SyncDigest> digest, BiConsumer<String, SyncRepair> repair) {
+        this.maxPressure = maxPressure;
+        this.domains = domains;
+        this.digest = digest;
+        this.repair = repair;
+        if (periodMs > 0)
+            timer.scheduleWithFixedDelay(this::sync, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sincroniza com o proximo dominio.
+     */
+    private void sync() {
+        if (ServerLoad.current().pressure() > maxPressure)
+            return;
+
+        List<String> list = new ArrayList<>(domains.get());
+        if (list.isEmpty() || !syncing.compareAndSet(false, true)) return;
+        Collections.sort(list);
+        String domain = list.get(Math.floorMod(round++, list.size()));
+
+        try {
+            SyncDigest d = digest.apply(domain);
+            FeedsClientFactory.callAsync(domain, SYNC_RETRIES, feeds -> feeds.syncFeedsAsync(d))
+                    .whenComplete((result, x) -> timer.execute(() -> synced(domain, result, x)));
+        } catch (RuntimeException x) {
+            synced(domain, null, x);
+        }
+    }
+
+    /**
+     * Aplica, na thread da anti-entropy, a resposta de um dominio.
+     */
+    private void synced(String domain, Result<SyncRepair> result, Throwable x) {
+        try {
+            if (x == null && result.isOK() && result.value() != null)
+                repair.accept(domain, result.value());
+            else
+                Log.fine("Anti-entropy with " + domain + " skipped: " + (x != null ? x.getMessage() : result.isOK() ? "no reply" : result.error()));
+        } catch (RuntimeException e) {
+            // A thread do timer nunca pode terminar com uma excecao, senao as rondas seguintes nao correm
+            Log.warning("Anti-entropy with " + domain + " failed: " + e.getMessage());
+        } finally {
+            syncing.set(false);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package sd2223.trab1.server.java;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Contadores de hits e misses de uma cache, e da latencia dos pedidos remotos que a cache evita.
+ */
+public class CacheStats implements CacheStatsMBean {
+
+    private static Logger Log = Logger.getLogger(CacheStats.class.getName());
+
+    private static final String OBJECT_NAME = "sd2223.trab1:type=CacheStats,name=%s";
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder remoteNanos = new LongAdder();
+
+    /**
+     * Cria os contadores e regista-os no servidor JMX da plataforma.
+     *
+     * @param name nome da cache
+     */
+    CacheStats(String name) {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var objectName = new ObjectName(String.format(OBJECT_NAME, name));
+            if (!server.isRegistered(objectName))
+                server.registerMBean(this, objectName);
+        } catch (Exception x) {
+            Log.warning("Cannot register cache stats " + name + ": " + x.getMessage());
+        }
+    }
+
+    void hit() {
+        hits.increment();
+    }
+
+    /**
+     * Regista um miss e a latencia do pedido remoto que foi preciso fazer.
+     *
+     * @param nanos duracao do pedido remoto
+     */
+    void miss(long nanos) {
+        misses.increment();
+        remoteNanos.add(nanos);
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public double getAverageRemoteMillis() {
+        long m = misses.sum();
+        return m == 0 ? 0.0 : remoteNanos.sum() / 1e6 / m;
+    }
+
+    @Override
+    public double getSavedMillis() {
+        return hits.sum() * getAverageRemoteMillis();
+    }
+}
@@ -0,0 +1,26 @@
+package sd2223.trab1.server.java;
+
+/**
+ * Metricas de uma cache de pedidos remotos, expostas por JMX.
+ */
+public interface CacheStatsMBean {
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return fracao dos acessos que foram resolvidos pela cache
+     */
+    double getHitRate();
+
+    /**
+     * @return latencia media (ms) de um pedido remoto
+     */
+    double getAverageRemoteMillis();
+
+    /**
+     * @return estimativa do tempo poupado (ms): hits vezes a latencia media de um pedido remoto
+     */
+    double getSavedMillis();
+}
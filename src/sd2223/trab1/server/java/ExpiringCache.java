@@ -0,0 +1,108 @@
+package sd2223.trab1.server.java;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache concorrente e limitada em que cada entrada expira ao fim de um tempo (TTL) proprio.
+ *
+ * @param <K> tipo das chaves
+ * @param <V> tipo dos valores
+ */
+class ExpiringCache<K, V> {
+
+    private static class Entry<V> {
+        final V value;
+        final long expires;
+
+        Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private final int maxSize;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize numero maximo de entradas
+     */
+    ExpiringCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * @param key chave
+     * @return o valor associado a chave, ou null se nao existe ou ja expirou
+     */
+    V get(K key) {
+        Entry<V> e = entries.get(key);
+        if (e == null) return null;
+        if (e.expires < System.currentTimeMillis()) {
+            entries.remove(key, e);
+            return null;
+        }
+        return e.value;
+    }
+
+    /**
+     * Associa um valor a chave durante ttl ms.
+     *
+     * @param key   chave
+     * @param value valor
+     * @param ttl   tempo de vida da entrada em ms
+     */
+    void put(K key, V value, long ttl) {
+        if (ttl <= 0) return;
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttl));
+        if (entries.size() > maxSize)
+            evict();
+    }
+
+    /**
+     * Associa um valor a chave durante ttl ms, se a chave nao tiver ja um valor que nao expirou.
+     *
+     * @param key   chave
+     * @param value valor
+     * @param ttl   tempo de vida da entrada em ms
+     * @return true se o valor foi associado, false se a chave ja tinha um valor
+     */
+    boolean putIfAbsent(K key, V value, long ttl) {
+        long now = System.currentTimeMillis();
+        boolean[] added = {false};
+        entries.compute(key, (k, e) -> {
+            if (e != null && e.expires >= now) return e;
+            added[0] = true;
+            return new Entry<>(value, now + ttl);
+        });
+        if (added[0] && entries.size() > maxSize)
+            evict();
+        return added[0];
+    }
+
+    /**
+     * Remove a entrada da chave.
+     *
+     * @param key chave
+     */
+    void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Remove as entradas expiradas e, se ainda for preciso, entradas arbitrarias ate
+     * a cache voltar a ter no maximo 90% da capacidade.
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(e -> e.expires < now);
+
+        int target = maxSize - maxSize / 10;
+        Iterator<K> it = entries.keySet().iterator();
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
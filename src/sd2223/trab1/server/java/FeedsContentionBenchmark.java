@@ -0,0 +1,125 @@
+package sd2223.trab1.server.java;
+
+import sd2223.trab1.api.Message;
+
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Microbenchmark de contencao do JavaFeeds: debito de leituras (getMessage) de users diferentes
+ * com 1, 2, 4, ... threads ate ao numero de cores, enquanto outra thread escreve sem parar no
+ * feed de um user "quente".
+ * <p>
+ * Com o argumento global, cada operacao e feita dentro de synchronized (feeds), como antes das
+ * estruturas concorrentes por user, para comparar: com o monitor global as leituras nao escalam.
+ * As msgs sao colocadas com propagateMsg, que nao contacta outros servidores.
+ * <p>
+ * java -cp target/classes:DEPS sd2223.trab1.server.java.FeedsContentionBenchmark [users] [msgsPorUser] [msPorMedicao] [global]
+ */
+public class FeedsContentionBenchmark {
+
+    private static final String DOMAIN = "bench";
+    private static final String ORIGIN = "origin";
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int msgsPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        long measureMs = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+        boolean global = args.length > 3 && args[3].equals("global");
+        // O user 0 e o que recebe as escritas; as leituras sao dos outros
+        if (users < 2 || msgsPerUser < 1) {
+            System.err.println("Uso: FeedsContentionBenchmark [users >= 2] [msgsPorUser >= 1] [msPorMedicao] [global]");
+            System.exit(1);
+        }
+
+        // Tem de ser definido antes de a classe JavaFeeds ser inicializada
+        System.setProperty("feeds.outbox.dir", Files.createTempDirectory("feeds-bench").toString());
+        System.setProperty("feeds.sync.period", "0");
+        JavaFeeds feeds = new JavaFeeds(DOMAIN, 0);
+
+        long id = 0;
+        for (int u = 0; u < users; u++)
+            for (int m = 0; m < msgsPerUser; m++)
+                feeds.propagateMsg(new String[]{user(u)}, message(id++, m));
+        long firstWriterId = id;
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("users=%d msgs/user=%d cores=%d measure=%dms lock=%s%n", users, msgsPerUser, cores, measureMs,
+                global ? "global monitor" : "per user");
+
+        // Aquecimento
+        run(feeds, global, 1, users, msgsPerUser, measureMs / 2, firstWriterId);
+
+        double base = 0;
+        for (int threads = 1; threads <= cores; threads = threads < cores && threads * 2 > cores ? cores : threads * 2) {
+            double opsPerSec = run(feeds, global, threads, users, msgsPerUser, measureMs, firstWriterId + threads * 10_000_000L);
+            if (threads == 1) base = opsPerSec;
+            System.out.printf("readers=%2d  %,14.0f reads/s  speedup=%.2f%n", threads, opsPerSec, opsPerSec / base);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Mede o debito de leituras com o numero de threads dado e uma thread que escreve no user 0.
+     */
+    private static double run(JavaFeeds feeds, boolean global, int threads, int users, int msgsPerUser, long ms, long writerIds)
+            throws InterruptedException {
+        LongAdder reads = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(threads + 1);
+
+        Thread writer = new Thread(() -> {
+            long id = writerIds;
+            while (!stop.get()) {
+                Message msg = message(id++, 0);
+                if (global)
+                    synchronized (feeds) {
+                        feeds.propagateMsg(new String[]{user(0)}, msg);
+                    }
+                else
+                    feeds.propagateMsg(new String[]{user(0)}, msg);
+            }
+            done.countDown();
+        });
+        writer.start();
+
+        for (int t = 0; t < threads; t++)
+            new Thread(() -> {
+                var random = ThreadLocalRandom.current();
+                long n = 0;
+                while (!stop.get()) {
+                    int u = 1 + random.nextInt(users - 1);
+                    long mid = (long) u * msgsPerUser + random.nextInt(msgsPerUser);
+                    boolean ok;
+                    if (global)
+                        synchronized (feeds) {
+                            ok = feeds.getMessage(user(u), mid).isOK();
+                        }
+                    else
+                        ok = feeds.getMessage(user(u), mid).isOK();
+                    if (ok) n++;
+                }
+                reads.add(n);
+                done.countDown();
+            }).start();
+
+        long start = System.nanoTime();
+        Thread.sleep(ms);
+        stop.set(true);
+        done.await();
+        return reads.sum() * 1e9 / (System.nanoTime() - start);
+    }
+
+    private static String user(int u) {
+        return "u" + u + "@" + DOMAIN;
+    }
+
+    private static Message message(long id, int n) {
+        Message msg = new Message(id, "author", ORIGIN, "msg " + n);
+        msg.setCreationTime(System.currentTimeMillis());
+        return msg;
+    }
+}
@@ -1,21 +1,63 @@
 package sd2223.trab1.server.java;
 
 import jakarta.inject.Singleton;
+import sd2223.trab1.api.AuthorDigest;
+import sd2223.trab1.api.FeedPage;
 import sd2223.trab1.api.Message;
+import sd2223.trab1.api.PropagatedMessage;
+import sd2223.trab1.api.SyncDigest;
+import sd2223.trab1.api.SyncRepair;
 import sd2223.trab1.api.java.Feeds;
 import sd2223.trab1.api.java.Result;
-import sd2223.trab1.api.java.Users;
 import sd2223.trab1.client.FeedsClientFactory;
 import sd2223.trab1.client.UsersClientFactory;
-
+import sd2223.trab1.server.ServerLoad;
+import sd2223.trab1.server.ServerSecret;
+import sd2223.trab1.server.ServerThreads;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 @Singleton
 public class JavaFeeds implements Feeds {
     private static final String DELIMITER = "@";
 
+    /**
+     * Separa o tempo e o id de uma msg dentro de um cursor.
+     */
+    private static final String CURSOR_DELIMITER = ":";
+
+    /**
+     * Numero de msgs por pagina quando o cliente nao indica um limite.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Numero maximo de msgs por pagina.
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Tempo de espera de um long-poll quando o cliente nao indica um timeout.
+     */
+    private static final long DEFAULT_POLL_TIMEOUT = 5000;
+
+    /**
+     * Tempo maximo de espera de um long-poll. Fica abaixo do READ_TIMEOUT dos clientes para
+     * que um long-poll reencaminhado para outro dominio nao expire no cliente.
+     */
+    private static final long MAX_POLL_TIMEOUT = 8000;
+
     /**
      * Dominio do servidor de feeds.
      */
@@ -29,55 +71,243 @@ public class JavaFeeds implements Feeds {
     /**
      * Numero sequencial que permite gerar ids unicos para as msgs.
      */
-    private long idCounter;
+    private final AtomicLong idCounter = new AtomicLong(Long.MIN_VALUE);
 
     /**
      * Numero de threads.
      */
     private final int THREADS = Runtime.getRuntime().availableProcessors();
 
-    private ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    /**
+     * Executor das chamadas a outros dominios: threads virtuais se -Dfeeds.threads=virtual.
+     */
+    private ExecutorService executor = ServerThreads.newTaskExecutor(THREADS);
+
+    /**
+     * Numero maximo de msgs enviadas num unico pedido de propagacao para um dominio.
+     */
+    private static final int PROPAGATE_BATCH_SIZE = Integer.getInteger("feeds.propagate.batchSize", 32);
+
+    /**
+     * Tempo maximo (ms) que uma msg espera por outras para o mesmo dominio antes de ser propagada.
+     */
+    private static final long PROPAGATE_BATCH_WINDOW = Long.getLong("feeds.propagate.batchWindow", 10);
+
+    /**
+     * Agrupa as msgs propagadas para cada dominio.
+     */
+    private final PropagationBatcher batcher;
+
+    /**
+     * Diretoria onde sao guardadas as filas de saida para os outros dominios.
+     */
+    private static final String OUTBOX_DIR = System.getProperty("feeds.outbox.dir", "outbox");
+
+    /**
+     * Numero de tentativas de cada entrega feita pela fila de saida. As novas tentativas sao
+     * agendadas pela propria fila, sem bloquear a thread.
+     */
+    private static final int OUTBOX_RETRIES = 1;
+
+    /**
+     * Filas de saida (persistentes) das operacoes a propagar para os outros dominios.
+     */
+    private final OutboundQueue outbox;
+
+    /**
+     * Tempo (ms) durante o qual uma password verificada no servidor de users e aceite sem o contactar de novo.
+     */
+    private static final long PWD_CACHE_TTL = Long.getLong("feeds.pwdCache.ttl", 30000);
+
+    /**
+     * Numero maximo de users com a password em cache.
+     */
+    private static final int PWD_CACHE_SIZE = Integer.getInteger("feeds.pwdCache.size", 10000);
+
+    private static final String PWD_DIGEST = "SHA-256";
+
+    /**
+     * Salt aleatorio deste servidor, para que as passwords em cache nunca fiquem guardadas em claro.
+     */
+    private final byte[] pwdSalt = newSalt();
+
+    /**
+     * Passwords verificadas recentemente.
+     * String -> user (format user@domain); byte[] -> digest (com salt) da ultima password verificada
+     */
+    private final ExpiringCache<String, byte[]> verifiedPwds = new ExpiringCache<>(PWD_CACHE_SIZE);
+
+    private final CacheStats verifiedPwdsStats = new CacheStats("verifyPassword");
+
+    /**
+     * Tempo (ms) durante o qual se assume que um user que existe continua a existir.
+     */
+    private static final long USER_CACHE_TTL = Long.getLong("feeds.userCache.ttl", 60000);
+
+    /**
+     * Tempo (ms) durante o qual se assume que um user que nao existe continua a nao existir.
+     * E curto para que um user acabado de criar fique visivel depressa.
+     */
+    private static final long USER_CACHE_NEGATIVE_TTL = Long.getLong("feeds.userCache.negativeTtl", 1000);
+
+    /**
+     * Numero maximo de users na cache de existencia.
+     */
+    private static final int USER_CACHE_SIZE = Integer.getInteger("feeds.userCache.size", 10000);
+
+    /**
+     * Resultados recentes de checkUser.
+     * String -> user (format user@domain); Boolean -> se o user existe
+     */
+    private final ExpiringCache<String, Boolean> knownUsers = new ExpiringCache<>(USER_CACHE_SIZE);
+
+    private final CacheStats knownUsersStats = new CacheStats("checkUser");
+
+    /**
+     * Tempo (ms) durante o qual uma msg propagada recebida e lembrada para descartar duplicados.
+     */
+    private static final long DEDUP_TTL = Long.getLong("feeds.dedup.ttl", 600000);
+
+    /**
+     * Numero maximo de msgs propagadas lembradas.
+     */
+    private static final int DEDUP_SIZE = Integer.getInteger("feeds.dedup.size", 100000);
+
+    /**
+     * Msgs propagadas recebidas recentemente. Os reenvios (novas tentativas, fila de saida)
+     * entregam a mesma msg mais do que uma vez; um duplicado e descartado antes de ser distribuido.
+     * String -> dominio de origem:id da msg
+     */
+    private final ExpiringCache<String, Boolean> recentPropagated = new ExpiringCache<>(DEDUP_SIZE);
+
+    /**
+     * Intervalo (ms) entre rondas de anti-entropy com os outros dominios (0 desativa).
+     */
+    private static final long SYNC_PERIOD = Long.getLong("feeds.sync.period", 30000);
+
+    /**
+     * Janela (ms) de msgs recentes comparadas pela anti-entropy.
+     */
+    private static final long SYNC_WINDOW = Long.getLong("feeds.sync.window", 3600000);
+
+    /**
+     * Tamanho (ms) dos intervalos de tempo em que as msgs de um autor sao resumidas num hash.
+     */
+    private static final long SYNC_BUCKET = Long.getLong("feeds.sync.bucket", 60000);
+
+    /**
+     * Numero maximo de autores num digest, e de autores com seguidores devolvidos numa resposta.
+     */
+    private static final int SYNC_MAX_AUTHORS = Integer.getInteger("feeds.sync.maxAuthors", 256);
+
+    /**
+     * Numero maximo de msgs devolvidas numa resposta de anti-entropy.
+     */
+    private static final int SYNC_MAX_MESSAGES = Integer.getInteger("feeds.sync.maxMessages", 1000);
+
+    /**
+     * Carga do servidor (pedidos em curso e em fila) acima da qual uma ronda de anti-entropy e saltada.
+     */
+    private static final int SYNC_MAX_PRESSURE = Integer.getInteger("feeds.sync.maxPressure", 4);
+
+    /**
+     * Sincroniza periodicamente este servidor com os dominios seguidos pelos seus users.
+     */
+    private final AntiEntropy antiEntropy;
 
+    /**
+     * Leituras de feeds de outros dominios em curso.
+     * String -> user:mid ou user:time; pedido remoto
+     */
+    private final Map<String, CompletableFuture<Result<Message>>> remoteMsgReads = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Result<List<Message>>>> remoteFeedReads = new ConcurrentHashMap<>();
+
+
+    /*
+     * Todas as estruturas sao concorrentes e indexadas por user, para que operacoes sobre
+     * users diferentes nunca disputem o mesmo lock (em vez de um synchronized (this) global).
+     */
 
     /**
-     * Feeds dos users.
-     * String -> userName; Long -> id; Message
+     * Feeds dos users, indexados por id e por tempo de criacao.
+     * String -> userName; UserFeed
      */
-    private final Map<String, Map<Long, Message>> feeds = new HashMap<>();
+    private final Map<String, UserFeed> feeds = new ConcurrentHashMap<>();
 
     /**
      * Subscricoes de users do de dominios diferentes, agrupados por dominio.
      * String -> userName; String -> Domain; Set String -> userName de subscricoes do user em Domain
      */
-    private final Map<String, Map<String, Set<String>>> mySubscriptionsByDomain = new HashMap<>();
+    private final Map<String, Map<String, Set<String>>> mySubscriptionsByDomain = new ConcurrentHashMap<>();
 
     /**
      * Subscricoes do user no mesmo dominio do user.
      * String -> userName; Set String -> userName de subscricoes do user no dominio do user
      */
-    private final Map<String, Set<String>> mySubscriptionsInCurrentDomain = new HashMap<>();
+    private final Map<String, Set<String>> mySubscriptionsInCurrentDomain = new ConcurrentHashMap<>();
 
     /**
      * Seguidores do user de dominios diferentes, agrupados por dominio.
      * String -> userName; String -> Domain; Set String -> userName de seguidores do user em Domain
      */
-    private final Map<String, Map<String, Set<String>>> myFollowersByDomain = new HashMap<>();
+    private final Map<String, Map<String, Set<String>>> myFollowersByDomain = new ConcurrentHashMap<>();
 
     /**
      * Seguidores do user no mesmo dominio do user.
      * String -> userName; Set String -> userName de followers do user no dominio do user
      */
-    private final Map<String, Set<String>> myFollowersInCurrentDomain = new HashMap<>();
+    private final Map<String, Set<String>> myFollowersInCurrentDomain = new ConcurrentHashMap<>();
+
+    /**
+     * Seguidores neste dominio de users de outros dominios, para distribuir localmente as msgs
+     * propagadas sem que o dominio do autor tenha de enviar a lista de destinatarios.
+     * String -> user (format user@domain) de outro dominio; Set String -> users deste dominio que o seguem
+     */
+    private final Map<String, Set<String>> localFollowersOfRemote = new ConcurrentHashMap<>();
 
+    /**
+     * Quando cada user de outro dominio passou a ter seguidores neste dominio: as msgs anteriores
+     * nao sao reparadas pela anti-entropy.
+     * String -> user (format user@domain) de outro dominio; Long -> tempo
+     */
+    private final Map<String, Long> followedSince = new ConcurrentHashMap<>();
+
+    /**
+     * Msgs recebidas na janela da anti-entropy de cada user de outro dominio, que sao resumidas no digest.
+     * String -> user (format user@domain) de outro dominio; UserFeed -> msgs desse user
+     */
+    private final Map<String, UserFeed> remoteAuthorLogs = new ConcurrentHashMap<>();
+
+    /**
+     * Dominios seguidos por users deste dominio, com que a anti-entropy sincroniza.
+     */
+    private final Set<String> syncDomains = ConcurrentHashMap.newKeySet();
 
-    public JavaFeeds() {
 
+    /**
+     * So pode ser usado depois de um servidor ter sido criado com o dominio e o id, porque cria a
+     * fila de saida e as threads de propagacao desse dominio.
+     */
+    public JavaFeeds() {
+        this(requireDomain(), feedsID);
     }
 
     public JavaFeeds(String feedsDomain, int feedsID) {
         this.feedsDomain = feedsDomain;
         this.feedsID = feedsID;
-        idCounter = Long.MIN_VALUE;
+        // Com threads virtuais nao ha fila: cada tarefa comeca logo
+        ServerLoad.setQueueDepth(() -> executor instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0);
+        this.outbox = new OutboundQueue(new File(OUTBOX_DIR, feedsDomain + "-" + feedsID), this::auxDeliver, executor);
+        this.batcher = new PropagationBatcher(PROPAGATE_BATCH_SIZE, PROPAGATE_BATCH_WINDOW,
+                (domain, batch) -> outbox.enqueue(domain, OutboundOp.msgs(batch)), executor);
+        this.antiEntropy = new AntiEntropy(SYNC_PERIOD, SYNC_MAX_PRESSURE, () -> syncDomains,
+                this::syncDigest, this::applySyncRepair);
+    }
+
+    private static String requireDomain() {
+        if (feedsDomain == null)
+            throw new IllegalStateException("The feeds domain is not set: use JavaFeeds(domain, id)");
+        return feedsDomain;
     }
 
     @Override
@@ -91,15 +321,11 @@ public class JavaFeeds implements Feeds {
         if (!result.isOK()) return Result.error(result.error());
 
         long id = generateId();
-        synchronized (this) {
-            msg.setId(id);
-            msg.setCreationTime(System.currentTimeMillis());
-        }
+        msg.setId(id);
+        msg.setCreationTime(System.currentTimeMillis());
 
         // Colocar a msg no user correto
-        synchronized (this) {
-            putMessageInUser(user, msg);
-        }
+        putMessageInUser(user, msg);
 
         postMessageInFollowers(user, msg);
 
@@ -111,12 +337,9 @@ public class JavaFeeds implements Feeds {
         var result = auxVerifyPassword(user, pwd);
         if (!result.isOK()) return Result.error(result.error());
 
-        synchronized (this) {
-            Map<Long, Message> userFeed = feeds.computeIfAbsent(user, feed -> new HashMap<>());
-            Message msg = userFeed.get(mid);
-            if (msg == null) return Result.error(Result.ErrorCode.NOT_FOUND); // 404
-            userFeed.remove(mid);
-        }
+        UserFeed userFeed = feeds.get(user);
+        if (userFeed == null || !userFeed.remove(mid))
+            return Result.error(Result.ErrorCode.NOT_FOUND); // 404
 
         return Result.ok();
     }
@@ -126,27 +349,32 @@ public class JavaFeeds implements Feeds {
         String userDomain = getUserDomain(user);
 
         if (userDomain.equals(feedsDomain)) {
-            Message msg;
-            synchronized (this) {
-                Map<Long, Message> userFeed = feeds.get(user);
+            UserFeed userFeed = feeds.get(user);
 
-                // Se o user nao existe
-                if (userFeed == null) return Result.error(Result.ErrorCode.NOT_FOUND); // 404
+            // Se o user nao existe
+            if (userFeed == null) return Result.error(Result.ErrorCode.NOT_FOUND); // 404
 
-                msg = userFeed.get(mid);
-
-                // Se a msg nao existe
-                if (msg == null) return Result.error(Result.ErrorCode.NOT_FOUND); // 404
-            }
+            Message msg = userFeed.get(mid);
 
+            // Se a msg nao existe
+            if (msg == null) return Result.error(Result.ErrorCode.NOT_FOUND); // 404
 
             return Result.ok(msg);
         } else {
-            Feeds feedsServer = FeedsClientFactory.get(userDomain);
-            return feedsServer.getMessage(user, mid);
+            // Bloqueia a thread do pedido (os servidores nao suspendem pedidos), exceto com threads virtuais
+            return getMessageAsync(user, mid).join();
         }
     }
 
+    @Override
+    public CompletableFuture<Result<Message>> getMessageAsync(String user, long mid) {
+        String userDomain = getUserDomain(user);
+        if (userDomain.equals(feedsDomain))
+            return CompletableFuture.completedFuture(getMessage(user, mid));
+
+        return remoteRead(user + CURSOR_DELIMITER + mid, remoteMsgReads, () -> FeedsClientFactory.getMessage(userDomain, user, mid));
+    }
+
     @Override
     public Result<List<Message>> getMessages(String user, long time) {
         String userDomain = getUserDomain(user);
@@ -155,20 +383,116 @@ public class JavaFeeds implements Feeds {
             var result = auxCheckUser(user);
             if (!result.isOK()) return Result.error(result.error());
 
-            List<Message> list = new LinkedList<>();
-            synchronized (this) {
-                Map<Long, Message> userFeed = feeds.computeIfAbsent(user, feed -> new HashMap<>());
-                userFeed.forEach((id, msg) -> {
-                    if (msg.getCreationTime() > time)
-                        list.add(msg);
-                });
-            }
+            UserFeed userFeed = feeds.get(user);
+            List<Message> list = userFeed == null ? new ArrayList<>() : userFeed.since(time);
 
             return Result.ok(list);
 
         } else {
-            Feeds feedsServer = FeedsClientFactory.get(userDomain);
-            return feedsServer.getMessages(user, time);
+            // Bloqueia a thread do pedido (os servidores nao suspendem pedidos), exceto com threads virtuais
+            return getMessagesAsync(user, time).join();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Result<List<Message>>> getMessagesAsync(String user, long time) {
+        String userDomain = getUserDomain(user);
+        if (userDomain.equals(feedsDomain))
+            return CompletableFuture.completedFuture(getMessages(user, time));
+
+        return remoteRead(user + CURSOR_DELIMITER + time, remoteFeedReads, () -> FeedsClientFactory.getMessages(userDomain, user, time));
+    }
+
+    /**
+     * Faz uma leitura noutro dominio sem bloquear nenhuma thread do servidor.
+     * Leituras iguais feitas ao mesmo tempo partilham o mesmo pedido remoto.
+     *
+     * @param key      identifica a leitura
+     * @param inFlight leituras remotas em curso
+     * @param read     faz o pedido remoto
+     * @return o resultado da leitura
+     */
+    private <T> CompletableFuture<Result<T>> remoteRead(String key, Map<String, CompletableFuture<Result<T>>> inFlight,
+                                                        Supplier<CompletableFuture<Result<T>>> read) {
+        CompletableFuture<Result<T>> future = inFlight.get(key);
+        if (future != null) return future;
+
+        // O pedido e feito fora do mapa, porque pode esperar pela descoberta do dominio
+        CompletableFuture<Result<T>> mine = new CompletableFuture<>();
+        future = inFlight.putIfAbsent(key, mine);
+        if (future != null) return future;
+        try {
+            read.get().whenComplete((r, x) -> {
+                inFlight.remove(key, mine);
+                if (x == null) mine.complete(r);
+                else mine.completeExceptionally(x);
+            });
+        } catch (RuntimeException x) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(x);
+        }
+        return mine;
+    }
+
+    @Override
+    public Result<FeedPage> getMessagesPage(String user, long time, int limit, String cursor) {
+        String userDomain = getUserDomain(user);
+
+        if (userDomain.equals(feedsDomain)) {
+            var result = auxCheckUser(user);
+            if (!result.isOK()) return Result.error(result.error());
+
+            // Posicao a partir da qual se devolvem msgs: (time, depois de todos os ids) ou a do cursor
+            long afterTime = time;
+            long afterId = Long.MAX_VALUE;
+            if (cursor != null && !cursor.isEmpty()) {
+                long[] position = decodeCursor(cursor);
+                if (position == null) return Result.error(Result.ErrorCode.BAD_REQUEST); // 400
+                afterTime = position[0];
+                afterId = position[1];
+            }
+
+            int pageSize = limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+
+            UserFeed userFeed = feeds.get(user);
+            if (userFeed == null) return Result.ok(new FeedPage());
+
+            // Pedimos mais uma msg para saber se existe uma pagina seguinte
+            List<Message> list = userFeed.after(afterTime, afterId, pageSize + 1);
+            String next = null;
+            if (list.size() > pageSize) {
+                list.remove(pageSize);
+                next = encodeCursor(list.get(pageSize - 1));
+            }
+            return Result.ok(new FeedPage(list, next));
+
+        } else {
+            // O cursor e opaco para este servidor, e reencaminhado tal como veio
+            return FeedsClientFactory.call(userDomain, feedsServer -> feedsServer.getMessagesPage(user, time, limit, cursor));
+        }
+    }
+
+    @Override
+    public Result<List<Message>> pollMessages(String user, long time, long timeout) {
+        String userDomain = getUserDomain(user);
+
+        if (userDomain.equals(feedsDomain)) {
+            var result = auxCheckUser(user);
+            if (!result.isOK()) return Result.error(result.error());
+
+            long wait = timeout <= 0 ? DEFAULT_POLL_TIMEOUT : Math.min(timeout, MAX_POLL_TIMEOUT);
+
+            // O feed e criado se ainda nao existir para que putMessageInUser acorde quem espera
+            UserFeed userFeed = feeds.computeIfAbsent(user, feed -> new UserFeed());
+            try {
+                return Result.ok(userFeed.await(time, wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Result.ok(userFeed.since(time));
+            }
+
+        } else {
+            return FeedsClientFactory.call(userDomain, feedsServer -> feedsServer.pollMessages(user, time, Math.min(timeout, MAX_POLL_TIMEOUT)));
         }
     }
 
@@ -184,27 +508,23 @@ public class JavaFeeds implements Feeds {
 
         // Se userSub esta no mesmo dominio de user
         if (areSameDomain(user, userSub)) {
-            synchronized (this) {
-                // Adiciono userSub as subs de user
-                Set<String> userSubscriptions = mySubscriptionsInCurrentDomain.computeIfAbsent(user, subs -> new HashSet<>());
-                userSubscriptions.add(userSub);
-
-                // Adiciono user aos follows de userSub
-                Set<String> userSubFollowers = myFollowersInCurrentDomain.computeIfAbsent(userSub, followers -> new HashSet<>());
-                userSubFollowers.add(user);
-            }
+            // Adiciono userSub as subs de user
+            Set<String> userSubscriptions = mySubscriptionsInCurrentDomain.computeIfAbsent(user, subs -> ConcurrentHashMap.newKeySet());
+            userSubscriptions.add(userSub);
+
+            // Adiciono user aos follows de userSub
+            Set<String> userSubFollowers = myFollowersInCurrentDomain.computeIfAbsent(userSub, followers -> ConcurrentHashMap.newKeySet());
+            userSubFollowers.add(user);
         }
         // Se estao em dominios diferentes
         else {
-            synchronized (this) {
-                // Adiciono userSub as subs de user
-                Map<String, Set<String>> subscriptionsByDomain = mySubscriptionsByDomain.computeIfAbsent(user, domain -> new HashMap<>());
-                String userSubDomain = getUserDomain(userSub);
-                Set<String> subsInDomain = subscriptionsByDomain.computeIfAbsent(userSubDomain, subs -> new HashSet<>());
-                subsInDomain.add(userSub);
-            }
-            Runnable task = () -> auxPropSub(user, userSub);
-            executor.execute(task);
+            // Adiciono userSub as subs de user
+            Map<String, Set<String>> subscriptionsByDomain = mySubscriptionsByDomain.computeIfAbsent(user, domain -> new ConcurrentHashMap<>());
+            String userSubDomain = getUserDomain(userSub);
+            Set<String> subsInDomain = subscriptionsByDomain.computeIfAbsent(userSubDomain, subs -> ConcurrentHashMap.newKeySet());
+            subsInDomain.add(userSub);
+            addLocalFollower(userSub, user);
+            outbox.enqueue(userSubDomain, OutboundOp.sub(user, userSub));
         }
 
         return Result.ok();
@@ -222,28 +542,24 @@ public class JavaFeeds implements Feeds {
 
         // Se estao no mesmo dominio
         if (areSameDomain(user, userSub)) {
-            synchronized (this) {
-                // Removo userSub das subcricoes de user
-                Set<String> userSubscriptions = mySubscriptionsInCurrentDomain.get(user);
-                if (userSubscriptions != null) userSubscriptions.remove(userSub);
-
-                // Removo user dos followers de userSub
-                Set<String> userSubFollowers = myFollowersInCurrentDomain.get(userSub);
-                if (userSubFollowers != null) userSubFollowers.remove(user);
-            }
+            // Removo userSub das subcricoes de user
+            Set<String> userSubscriptions = mySubscriptionsInCurrentDomain.get(user);
+            if (userSubscriptions != null) userSubscriptions.remove(userSub);
+
+            // Removo user dos followers de userSub
+            Set<String> userSubFollowers = myFollowersInCurrentDomain.get(userSub);
+            if (userSubFollowers != null) userSubFollowers.remove(user);
         } else {
-            synchronized (this) {
-                // Removo userSub as subs de user de dominios diferentes
-                Map<String, Set<String>> subscriptionsByDomain = mySubscriptionsByDomain.get(user);
-                if (subscriptionsByDomain != null) {
-                    String userSubDomain = getUserDomain(userSub);
-                    Set<String> subsInDomain = subscriptionsByDomain.get(userSubDomain);
-                    if (subsInDomain != null)
-                        subsInDomain.remove(userSub);
-                }
+            // Removo userSub as subs de user de dominios diferentes
+            Map<String, Set<String>> subscriptionsByDomain = mySubscriptionsByDomain.get(user);
+            if (subscriptionsByDomain != null) {
+                String userSubDomain = getUserDomain(userSub);
+                Set<String> subsInDomain = subscriptionsByDomain.get(userSubDomain);
+                if (subsInDomain != null)
+                    subsInDomain.remove(userSub);
             }
-            Runnable task = () -> auxPropUnsub(user, userSub);
-            executor.execute(task);
+            removeLocalFollower(userSub, user);
+            outbox.enqueue(getUserDomain(userSub), OutboundOp.unsub(user, userSub));
         }
         return Result.ok();
     }
@@ -255,84 +571,156 @@ public class JavaFeeds implements Feeds {
 
         List<String> list = new LinkedList<>();
 
-        synchronized (this) {
-            // Adicionamos todas as subscricores que o user tem no mesmo dominio
-            Set<String> res = mySubscriptionsInCurrentDomain.get(user);
-            if (res != null) list.addAll(res);
-            // Adicionamos todas as subscricores que o user tem em dominios diferentes do seu
-            Map<String, Set<String>> subsByDomain = mySubscriptionsByDomain.get(user);
-            if (subsByDomain != null)
-                subsByDomain.forEach((domain, domainSubs) -> {
-                    if (domainSubs != null)
-                        list.addAll(domainSubs);
-                });
+        // Adicionamos todas as subscricores que o user tem no mesmo dominio
+        Set<String> res = mySubscriptionsInCurrentDomain.get(user);
+        if (res != null) list.addAll(res);
+        // Adicionamos todas as subscricores que o user tem em dominios diferentes do seu
+        Map<String, Set<String>> subsByDomain = mySubscriptionsByDomain.get(user);
+        if (subsByDomain != null)
+            subsByDomain.forEach((domain, domainSubs) -> {
+                if (domainSubs != null)
+                    list.addAll(domainSubs);
+            });
 
-        }
         return Result.ok(list);
     }
 
     @Override
     public Result<Void> deleteUserFeed(String user) {
         // Eliminar todas as msg do user
-        synchronized (this) {
-            Map<Long, Message> userFeed = feeds.get(user);
-            if (userFeed == null) return Result.ok(); // nao tem msg no feed
-
-            feeds.remove(user); // removo o meu feed
-
-            Set<String> subscriptions = mySubscriptionsInCurrentDomain.get(user);
-            if (subscriptions != null)
-                for (String s : subscriptions) { // aviso meus followers que os deixei de seguir
-                    Set<String> followers = myFollowersInCurrentDomain.get(s);
-                    followers.remove(user);
-                }
-            mySubscriptionsInCurrentDomain.remove(user); // Remover todas as subs do mesmo dominio
-
-            // Removo todos os followers do user
-            Set<String> uFollowers = myFollowersInCurrentDomain.get(user);
-            if (uFollowers != null)
-                for (String f : uFollowers) { // Tenho de avisar todos os followers que eles deixaram de me seguir
-                    Set<String> subs = mySubscriptionsInCurrentDomain.get(f);
-                    subs.remove(user);
-                }
-            myFollowersInCurrentDomain.remove(user); // Remover todos os followers do mesmo dominio
-        }
+        feeds.remove(user); // removo o meu feed
+        verifiedPwds.invalidate(user);
+        knownUsers.invalidate(user);
+
+        Set<String> subscriptions = mySubscriptionsInCurrentDomain.remove(user); // Remover todas as subs do mesmo dominio
+        if (subscriptions != null)
+            for (String s : subscriptions) { // aviso meus followers que os deixei de seguir
+                Set<String> followers = myFollowersInCurrentDomain.get(s);
+                if (followers != null) followers.remove(user);
+            }
+
+        // Removo todos os followers do user
+        Set<String> uFollowers = myFollowersInCurrentDomain.remove(user); // Remover todos os followers do mesmo dominio
+        if (uFollowers != null)
+            for (String f : uFollowers) { // Tenho de avisar todos os followers que eles deixaram de me seguir
+                Set<String> subs = mySubscriptionsInCurrentDomain.get(f);
+                if (subs != null) subs.remove(user);
+            }
+
+        // Deixa de receber as msgs dos users de outros dominios que seguia, e avisa esses dominios
+        Map<String, Set<String>> remoteSubscriptions = mySubscriptionsByDomain.remove(user);
+        if (remoteSubscriptions != null)
+            remoteSubscriptions.forEach((domain, subs) -> subs.forEach(s -> {
+                removeLocalFollower(s, user);
+                outbox.enqueue(domain, OutboundOp.unsub(user, s));
+            }));
 
         return Result.ok();
     }
 
     @Override
     public Result<Void> propagateMsg(String[] users, Message msg) {
-        synchronized (this) {
-            if (users != null)
-                for (String u : users) {
-                    Map<Long, Message> userFeed = feeds.computeIfAbsent(u, feed -> new HashMap<>());
-                    userFeed.put(msg.getId(), msg);
-                }
-        }
+        if (users != null && msg != null && isNewPropagated(msg.getDomain(), msg))
+            for (String u : users)
+                putMessageInUser(u, msg);
+        return Result.ok();
+    }
+
+    @Override
+    public Result<Void> propagateMsgs(List<PropagatedMessage> batch) {
+        if (batch != null)
+            for (PropagatedMessage pm : batch)
+                if (pm.getAuthor() != null)
+                    postMessageInRemoteFollowers(pm.getAuthor(), pm.getMessage());
+                else
+                    propagateMsg(pm.getUsers(), pm.getMessage());
         return Result.ok();
     }
 
+    @Override
+    public Result<Void> invalidateUser(String user, String secret) {
+        // So os outros servidores podem esvaziar as caches, senao qualquer cliente as tornava inuteis
+        if (!ServerSecret.matches(secret))
+            return Result.error(Result.ErrorCode.FORBIDDEN); // 403
+
+        verifiedPwds.invalidate(user);
+        knownUsers.invalidate(user);
+        return Result.ok();
+    }
+
+    @Override
+    public Result<SyncRepair> syncFeeds(SyncDigest digest) {
+        if (digest == null || digest.getDomain() == null || digest.getBucket() <= 0)
+            return Result.error(Result.ErrorCode.BAD_REQUEST); // 400
+
+        String origin = digest.getDomain();
+        // Nunca se percorre mais do que a janela da anti-entropy, mesmo que o digest peca mais
+        long oldest = System.currentTimeMillis() - SYNC_WINDOW;
+        List<PropagatedMessage> messages = new ArrayList<>();
+        List<AuthorDigest> followers = new ArrayList<>();
+        Set<String> inDigest = new HashSet<>();
+
+        if (digest.getAuthors() != null)
+            for (AuthorDigest ad : digest.getAuthors()) {
+                if (inDigest.size() >= SYNC_MAX_AUTHORS) break;
+                String author = ad.getAuthor();
+                if (author == null || !author.contains(DELIMITER) || !getUserDomain(author).equals(feedsDomain))
+                    continue;
+                inDigest.add(author);
+
+                // Seguidores: o dominio de origem e que sabe quem segue o autor, so enviamos o que temos se diferir
+                Set<String> known = followersIn(author, origin);
+                if (followersHash(known) != ad.getFollowersHash())
+                    followers.add(new AuthorDigest(author, known.toArray(new String[0])));
+
+                // Msgs: so as dos intervalos de tempo cujo hash difere
+                UserFeed userFeed = feeds.get(author);
+                if (userFeed == null) continue;
+                Map<Long, List<Message>> mine = new HashMap<>();
+                for (Message msg : userFeed.since(Math.max(oldest, ad.getSince())))
+                    if (isAuthor(author, msg))
+                        mine.computeIfAbsent(msg.getCreationTime() / digest.getBucket(), b -> new ArrayList<>()).add(msg);
+
+                Map<Long, Long> theirs = new HashMap<>();
+                if (ad.getBuckets() != null && ad.getHashes() != null)
+                    for (int i = 0; i < Math.min(ad.getBuckets().length, ad.getHashes().length); i++)
+                        theirs.put(ad.getBuckets()[i], ad.getHashes()[i]);
+
+                for (var bucket : mine.entrySet())
+                    if (!Long.valueOf(messagesHash(bucket.getValue())).equals(theirs.get(bucket.getKey())))
+                        for (Message msg : bucket.getValue())
+                            if (messages.size() < SYNC_MAX_MESSAGES)
+                                messages.add(new PropagatedMessage(author, msg));
+            }
+
+        // Users deste dominio que julgamos seguidos no dominio de origem mas que nao estao no digest (ex.: unfollow perdido)
+        for (var entry : myFollowersByDomain.entrySet()) {
+            if (followers.size() >= SYNC_MAX_AUTHORS) break;
+            Set<String> known = entry.getValue().get(origin);
+            if (known != null && !known.isEmpty() && !inDigest.contains(entry.getKey()))
+                followers.add(new AuthorDigest(entry.getKey(), known.toArray(new String[0])));
+        }
+
+        return Result.ok(new SyncRepair(messages, followers));
+    }
+
     @Override
     public Result<Void> propagateSub(String user, String userSub) {
         // Adicionar user aos followers de userSub
-        synchronized (this) {
-            Map<String, Set<String>> followersByDomain = myFollowersByDomain.computeIfAbsent(userSub, domain -> new HashMap<>());
-            String userDomain = getUserDomain(user);
-            Set<String> usersInDomain = followersByDomain.computeIfAbsent(userDomain, followers -> new HashSet<>());
-            usersInDomain.add(user);
-        }
+        Map<String, Set<String>> followersByDomain = myFollowersByDomain.computeIfAbsent(userSub, domain -> new ConcurrentHashMap<>());
+        String userDomain = getUserDomain(user);
+        Set<String> usersInDomain = followersByDomain.computeIfAbsent(userDomain, followers -> ConcurrentHashMap.newKeySet());
+        usersInDomain.add(user);
         return Result.ok();
     }
 
     @Override
     public Result<Void> propagateUnsub(String user, String userSub) {
         // Remover user dos followers de userSub
-        synchronized (this) {
-            Map<String, Set<String>> followersByDomain = myFollowersByDomain.computeIfAbsent(userSub, domain -> new HashMap<>());
-            String userDomain = getUserDomain(user);
-            Set<String> usersInDomain = followersByDomain.computeIfAbsent(userDomain, followers -> new HashSet<>());
-            usersInDomain.remove(user);
+        Map<String, Set<String>> followersByDomain = myFollowersByDomain.get(userSub);
+        if (followersByDomain != null) {
+            Set<String> usersInDomain = followersByDomain.get(getUserDomain(user));
+            if (usersInDomain != null) usersInDomain.remove(user);
         }
         return Result.ok();
     }
@@ -345,11 +733,54 @@ public class JavaFeeds implements Feeds {
      * @return ok se esta correta ou um erro.
      */
     private Result<Void> auxVerifyPassword(String user, String pwd) {
+        byte[] digest = pwd == null ? null : pwdDigest(user, pwd);
+        if (digest != null) {
+            byte[] cached = verifiedPwds.get(user);
+            if (cached != null && MessageDigest.isEqual(cached, digest)) {
+                verifiedPwdsStats.hit();
+                return Result.ok();
+            }
+        }
+
         var parts = user.split(DELIMITER);
         String userName = parts[0];
         String userDomain = parts[1];
-        Users usersServer = UsersClientFactory.get(userDomain);
-        return usersServer.verifyPassword(userName, pwd);
+        long start = System.nanoTime();
+        var result = UsersClientFactory.verifyPassword(userDomain, userName, pwd);
+        verifiedPwdsStats.miss(System.nanoTime() - start);
+
+        if (result.isOK()) {
+            if (digest != null) verifiedPwds.put(user, digest, PWD_CACHE_TTL);
+            knownUsers.put(user, true, USER_CACHE_TTL); // se a password esta correta o user existe
+        } else if (result.error() == Result.ErrorCode.FORBIDDEN || result.error() == Result.ErrorCode.NOT_FOUND)
+            verifiedPwds.invalidate(user);
+        return result;
+    }
+
+    private static byte[] newSalt() {
+        byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        return salt;
+    }
+
+    /**
+     * Calcula o digest (com o salt deste servidor) da password de um user.
+     *
+     * @param user user
+     * @param pwd  password
+     * @return digest
+     */
+    private byte[] pwdDigest(String user, String pwd) {
+        try {
+            MessageDigest md = MessageDigest.getInstance(PWD_DIGEST);
+            md.update(pwdSalt);
+            md.update(user.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(pwd.getBytes(StandardCharsets.UTF_8));
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
     }
 
     /**
@@ -359,48 +790,209 @@ public class JavaFeeds implements Feeds {
      * @return ok se existe ou um erro.
      */
     private Result<Void> auxCheckUser(String user) {
+        Boolean exists = knownUsers.get(user);
+        if (exists != null) {
+            knownUsersStats.hit();
+            return exists ? Result.ok() : Result.error(Result.ErrorCode.NOT_FOUND); // 404
+        }
+
         var parts = user.split(DELIMITER);
         String userName = parts[0];
         String userDomain = parts[1];
-        Users usersServer = UsersClientFactory.get(userDomain);
-        return usersServer.checkUser(userName);
+        long start = System.nanoTime();
+        var result = UsersClientFactory.checkUser(userDomain, userName);
+        knownUsersStats.miss(System.nanoTime() - start);
+
+        // Apenas respostas definitivas ficam em cache (nao erros de comunicacao)
+        if (result.isOK())
+            knownUsers.put(user, true, USER_CACHE_TTL);
+        else if (result.error() == Result.ErrorCode.NOT_FOUND)
+            knownUsers.put(user, false, USER_CACHE_NEGATIVE_TTL);
+        return result;
     }
 
     /**
-     * Metodo auxiliar que chama o metodo que propaga uma mensagem.
+     * Metodo auxiliar que entrega uma operacao da fila de saida no servidor de feeds de outro dominio.
+     * Faz uma so tentativa; as novas tentativas sao agendadas pela fila de saida.
+     * Nao bloqueia: um dominio que nao e descoberto a tempo da TIMEOUT, como um que nao responde.
      *
      * @param serverDomain dominio do servidor
-     * @param users        conjunto de users que vao receber a msg
-     * @param msg          msg a ser propagada
+     * @param op           operacao a propagar (lote de msgs, subscricao ou unfollow)
+     * @return resultado da entrega
+     */
+    private CompletableFuture<Result<Void>> auxDeliver(String serverDomain, OutboundOp op) {
+        return FeedsClientFactory.callAsync(serverDomain, OUTBOX_RETRIES, feedsServer -> switch (op.getType()) {
+            case MSGS -> feedsServer.propagateMsgsAsync(op.getBatch());
+            case SUB -> feedsServer.propagateSubAsync(op.getUser(), op.getUserSub());
+            case UNSUB -> feedsServer.propagateUnsubAsync(op.getUser(), op.getUserSub());
+        });
+    }
+
+    /**
+     * Regista um user deste dominio como seguidor de um user de outro dominio.
+     *
+     * @param remoteUser user de outro dominio (format user@domain)
+     * @param user       seguidor deste dominio
+     */
+    private void addLocalFollower(String remoteUser, String user) {
+        localFollowersOfRemote.compute(remoteUser, (u, followers) -> {
+            if (followers == null) {
+                followers = ConcurrentHashMap.newKeySet();
+                followedSince.put(u, System.currentTimeMillis());
+            }
+            followers.add(user);
+            return followers;
+        });
+        syncDomains.add(getUserDomain(remoteUser));
+    }
+
+    /**
+     * Retira um seguidor deste dominio de um user de outro dominio. Quando ja nao ha seguidores,
+     * deixam de ser guardadas as msgs desse user para a anti-entropy.
+     *
+     * @param remoteUser user de outro dominio (format user@domain)
+     * @param user       seguidor deste dominio
+     */
+    private void removeLocalFollower(String remoteUser, String user) {
+        localFollowersOfRemote.computeIfPresent(remoteUser, (u, followers) -> {
+            followers.remove(user);
+            if (!followers.isEmpty()) return followers;
+            followedSince.remove(u);
+            remoteAuthorLogs.remove(u);
+            return null;
+        });
+    }
+
+    /**
+     * Calcula o digest enviado a um dominio pela anti-entropy: para cada user desse dominio com
+     * seguidores neste, os hashes das msgs recebidas por intervalo de tempo e o hash dos seguidores.
+     *
+     * @param domain dominio
+     * @return digest
+     */
+    private SyncDigest syncDigest(String domain) {
+        long now = System.currentTimeMillis();
+        List<String> authors = new ArrayList<>();
+        localFollowersOfRemote.forEach((author, followers) -> {
+            if (!followers.isEmpty() && getUserDomain(author).equals(domain))
+                authors.add(author);
+        });
+        // Em cada ronda e sincronizada uma amostra diferente dos autores
+        if (authors.size() > SYNC_MAX_AUTHORS) {
+            Collections.shuffle(authors);
+            authors.subList(SYNC_MAX_AUTHORS, authors.size()).clear();
+        }
+
+        List<AuthorDigest> digests = new ArrayList<>(authors.size());
+        for (String author : authors) {
+            Set<String> followers = localFollowersOfRemote.get(author);
+            if (followers == null) continue;
+            long since = Math.max(now - SYNC_WINDOW, followedSince.getOrDefault(author, now));
+
+            Map<Long, Long> buckets = new TreeMap<>();
+            UserFeed log = remoteAuthorLogs.get(author);
+            if (log != null)
+                for (Message msg : log.since(since))
+                    buckets.merge(msg.getCreationTime() / SYNC_BUCKET, mix(msg.getId()), Long::sum);
+
+            digests.add(new AuthorDigest(author, since, followersHash(followers),
+                    buckets.keySet().stream().mapToLong(Long::longValue).toArray(),
+                    buckets.values().stream().mapToLong(Long::longValue).toArray()));
+        }
+        return new SyncDigest(feedsDomain, SYNC_BUCKET, digests);
+    }
+
+    /**
+     * Aplica as diferencas devolvidas por um dominio a um digest: entrega as msgs que faltam e
+     * volta a propagar (pela fila de saida) as subscricoes e unfollows que o dominio nao recebeu.
+     *
+     * @param domain dominio
+     * @param repair diferencas
      */
-    private void auxPropMsg(String serverDomain, Set<String> users, Message msg) {
-        Feeds feedsServer = FeedsClientFactory.get(serverDomain);
-        String[] res = users.toArray(new String[users.size()]);
-        feedsServer.propagateMsg(res, msg);
+    private void applySyncRepair(String domain, SyncRepair repair) {
+        if (repair.getMessages() != null)
+            for (PropagatedMessage pm : repair.getMessages()) {
+                String author = pm.getAuthor();
+                Message msg = pm.getMessage();
+                if (author == null || msg == null || !author.contains(DELIMITER) || !getUserDomain(author).equals(domain))
+                    continue;
+                UserFeed log = remoteAuthorLogs.get(author);
+                if (log == null || log.get(msg.getId()) == null)
+                    postMessageInRemoteFollowers(author, msg);
+            }
+
+        if (repair.getFollowers() != null)
+            for (AuthorDigest ad : repair.getFollowers()) {
+                String author = ad.getAuthor();
+                if (author == null || !author.contains(DELIMITER) || !getUserDomain(author).equals(domain))
+                    continue;
+                Set<String> mine = localFollowersOfRemote.getOrDefault(author, Set.of());
+                Set<String> theirs = ad.getFollowers() == null ? Set.of() : new HashSet<>(Arrays.asList(ad.getFollowers()));
+                for (String f : mine)
+                    if (!theirs.contains(f))
+                        outbox.enqueue(domain, OutboundOp.sub(f, author));
+                for (String f : theirs)
+                    if (!mine.contains(f) && f.contains(DELIMITER) && getUserDomain(f).equals(feedsDomain))
+                        outbox.enqueue(domain, OutboundOp.unsub(f, author));
+            }
     }
 
     /**
-     * Metodo auxiliar para propagar uma subscricao de um dominio para outro.
+     * Seguidores de um user deste dominio que estao noutro dominio.
      *
-     * @param user    user que subscreve
-     * @param userSub user que foi subscrito
+     * @param user   user deste dominio
+     * @param domain dominio dos seguidores
+     * @return seguidores, potencialmente vazio
      */
-    private void auxPropSub(String user, String userSub) {
-        String userSubDomain = getUserDomain(userSub);
-        Feeds feedsServer = FeedsClientFactory.get(userSubDomain);
-        feedsServer.propagateSub(user, userSub);
+    private Set<String> followersIn(String user, String domain) {
+        Map<String, Set<String>> followersByDomain = myFollowersByDomain.get(user);
+        Set<String> followers = followersByDomain == null ? null : followersByDomain.get(domain);
+        return followers == null ? Set.of() : followers;
     }
 
     /**
-     * Metodo auxiliar para propagar um unfollow de um dominio para outro.
+     * Verifica se uma msg foi publicada por um user (o cliente pode indicar o user com ou sem dominio).
      *
-     * @param user    user que faz unfollow
-     * @param userSub user que foi unfollowed
+     * @param author user (format user@domain)
+     * @param msg    mensagem
+     * @return true se foi
      */
-    private void auxPropUnsub(String user, String userSub) {
-        String userSubDomain = getUserDomain(userSub);
-        Feeds feedsServer = FeedsClientFactory.get(userSubDomain);
-        feedsServer.propagateUnsub(user, userSub);
+    private boolean isAuthor(String author, Message msg) {
+        String user = msg.getUser();
+        return user != null && (user.equals(author) || (user + DELIMITER + msg.getDomain()).equals(author));
+    }
+
+    /**
+     * Hash de um conjunto de msgs, que nao depende da ordem.
+     */
+    private static long messagesHash(List<Message> msgs) {
+        long hash = 0;
+        for (Message msg : msgs)
+            hash += mix(msg.getId());
+        return hash;
+    }
+
+    /**
+     * Hash de um conjunto de seguidores, que nao depende da ordem.
+     */
+    private static long followersHash(Set<String> followers) {
+        long hash = 0;
+        for (String f : followers) {
+            long h = 0;
+            for (int i = 0; i < f.length(); i++)
+                h = 31 * h + f.charAt(i);
+            hash += mix(h);
+        }
+        return hash;
+    }
+
+    /**
+     * Espalha os bits de um valor (finalizador do SplitMix64), para que a soma dos hashes de um conjunto nao colida facilmente.
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
     }
 
     /**
@@ -410,8 +1002,8 @@ public class JavaFeeds implements Feeds {
      * @param msg  mensagem
      */
     private void putMessageInUser(String user, Message msg) {
-        Map<Long, Message> userFeed = feeds.computeIfAbsent(user, feed -> new HashMap<>());
-        userFeed.put(msg.getId(), msg);
+        UserFeed userFeed = feeds.computeIfAbsent(user, feed -> new UserFeed());
+        userFeed.put(msg);
     }
 
     /**
@@ -421,23 +1013,82 @@ public class JavaFeeds implements Feeds {
      * @param msg  mensagem a colocar
      */
     private void postMessageInFollowers(String user, Message msg) {
-        synchronized (this) {// mesmo dominio
-            // Colocar a msg no feed de todos os followers do user no mesmo dominio
-            Set<String> followersInCurrentDomain = myFollowersInCurrentDomain.computeIfAbsent(user, followers -> new HashSet<>());
+        // Colocar a msg no feed de todos os followers do user no mesmo dominio
+        Set<String> followersInCurrentDomain = myFollowersInCurrentDomain.get(user);
+        if (followersInCurrentDomain != null)
             for (String f : followersInCurrentDomain)
                 putMessageInUser(f, msg);
+
+        // Enviar a msg aos dominios onde o user tem followers; cada dominio sabe quais sao os seus
+        Map<String, Set<String>> followersByDomain = myFollowersByDomain.get(user);
+        if (followersByDomain != null)
+            followersByDomain.forEach((domain, set) -> {
+                if (!set.isEmpty())
+                    batcher.add(domain, new PropagatedMessage(user, msg));
+            });
+        // executor.shutdown();
+    }
+
+    /**
+     * Coloca uma msg de um user de outro dominio no feed dos seus followers neste dominio.
+     *
+     * @param author autor da msg (format user@domain)
+     * @param msg    mensagem
+     */
+    private void postMessageInRemoteFollowers(String author, Message msg) {
+        if (msg == null || !isNewPropagated(getUserDomain(author), msg)) return;
+
+        Set<String> followers = localFollowersOfRemote.get(author);
+        if (followers != null && !followers.isEmpty()) {
+            for (String f : followers)
+                putMessageInUser(f, msg);
+
+            // Guardada para o digest da anti-entropy, so enquanto esta dentro da janela
+            UserFeed log = remoteAuthorLogs.computeIfAbsent(author, a -> new UserFeed());
+            log.put(msg);
+            log.trim(System.currentTimeMillis() - SYNC_WINDOW);
         }
+    }
 
-        synchronized (this) {
-            // Colocar a msg no feed de todos os followers do user com dominios diferentes.
-            Map<String, Set<String>> followersByDomain = myFollowersByDomain.computeIfAbsent(user, domain -> new HashMap<>());
-            for (String domain : followersByDomain.keySet()) {
-                Set<String> set = followersByDomain.get(domain);
-                Runnable task = () -> auxPropMsg(domain, set, msg);
-                executor.execute(task);
-            }
+    /**
+     * Regista uma msg propagada recebida.
+     * O id so e unico no dominio de origem (identifica o servidor que o gerou, mas nao o dominio).
+     *
+     * @param originDomain dominio de origem da msg, ou null se desconhecido
+     * @param msg          mensagem
+     * @return false se a msg ja foi recebida recentemente
+     */
+    private boolean isNewPropagated(String originDomain, Message msg) {
+        if (originDomain == null) return true;
+        return recentPropagated.putIfAbsent(originDomain + CURSOR_DELIMITER + msg.getId(), true, DEDUP_TTL);
+    }
+
+    /**
+     * Codifica a posicao de uma msg no feed num cursor opaco.
+     *
+     * @param msg ultima msg de uma pagina
+     * @return cursor
+     */
+    private String encodeCursor(Message msg) {
+        String position = msg.getCreationTime() + CURSOR_DELIMITER + msg.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Descodifica um cursor produzido por encodeCursor.
+     *
+     * @param cursor cursor
+     * @return {creationTime, id} ou null se o cursor nao e valido
+     */
+    private long[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            var parts = position.split(CURSOR_DELIMITER);
+            if (parts.length != 2) return null;
+            return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+        } catch (IllegalArgumentException e) {
+            return null;
         }
-        // executor.shutdown();
     }
 
     /**
@@ -473,9 +1124,7 @@ public class JavaFeeds implements Feeds {
      * @return id
      */
     private long generateId() {
-        long result = idCounter * 256 + feedsID;
-        idCounter++;
-        return result;
+        return idCounter.getAndIncrement() * 256 + feedsID;
     }
 
 }
@@ -1,11 +1,11 @@
 package sd2223.trab1.server.java;
 
 import sd2223.trab1.api.User;
-import sd2223.trab1.api.java.Feeds;
 import sd2223.trab1.api.java.Result;
 import sd2223.trab1.api.java.Result.ErrorCode;
 import sd2223.trab1.api.java.Users;
 import sd2223.trab1.client.FeedsClientFactory;
+import sd2223.trab1.server.ServerSecret;
 
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -17,6 +17,11 @@ public class JavaUsers implements Users {
     private final String DELIMITER = "@";
     private final Map<String, User> users = new HashMap<>();
 
+    /**
+     * Numero de tentativas de cada aviso as replicas do servidor de feeds.
+     */
+    private static final int INVALIDATE_RETRIES = 3;
+
     private Result<User> auxGetUser(String name, String pwd) {
         // Check if user is valid
         if (name == null || pwd == null)
@@ -53,6 +58,8 @@ public class JavaUsers implements Users {
         }
 
         String name = user.getName() + DELIMITER + user.getDomain();
+        // O servidor de feeds pode ter em cache que o user nao existe
+        invalidateInFeeds(user.getDomain(), name);
         return Result.ok(name);
     }
 
@@ -88,8 +95,12 @@ public class JavaUsers implements Users {
                     oldUser.setDisplayName(newDisplayName);
 
                 String newPassword = user.getPwd();
-                if (newPassword != null)
+                if (newPassword != null) {
                     oldUser.setPwd(newPassword);
+                    // O servidor de feeds pode ter a password antiga em cache
+                    String userName = oldUser.getName() + DELIMITER + oldUser.getDomain();
+                    invalidateInFeeds(oldUser.getDomain(), userName);
+                }
 
                 return Result.ok(oldUser); // 200
             }
@@ -113,8 +124,7 @@ public class JavaUsers implements Users {
             }
 
             String userName = user.getName() + DELIMITER + user.getDomain();
-            Feeds feedsServer = FeedsClientFactory.get(user.getDomain());
-            feedsServer.deleteUserFeed(userName);
+            FeedsClientFactory.call(user.getDomain(), feedsServer -> feedsServer.deleteUserFeed(userName));
             
             return Result.ok(user); // 200n
         }
@@ -170,4 +180,20 @@ public class JavaUsers implements Users {
 
         return Result.ok();
     }
+
+    /**
+     * Avisa todas as replicas do servidor de feeds do dominio de que o user mudou, para descartarem
+     * o que tem em cache sobre ele. E feito fora do pedido do cliente e sem bloquear nenhuma thread;
+     * se o servidor de feeds nao for descoberto a tempo o aviso e descartado, e a cache expira sozinha.
+     * Sem o segredo partilhado pelos servidores (feeds.secret) o aviso seria recusado, por isso nem e enviado.
+     *
+     * @param domain dominio
+     * @param user   user (format user@domain)
+     */
+    private void invalidateInFeeds(String domain, String user) {
+        String secret = ServerSecret.get();
+        if (secret == null)
+            return;
+        FeedsClientFactory.callAllAsync(domain, INVALIDATE_RETRIES, feeds -> feeds.invalidateUserAsync(user, secret));
+    }
 }
@@ -0,0 +1,81 @@
+package sd2223.trab1.server.java;
+
+import sd2223.trab1.api.PropagatedMessage;
+
+import java.util.List;
+
+/**
+ * Operacao a propagar para outro dominio, guardada na fila de saida desse dominio.
+ */
+class OutboundOp {
+
+    enum Type {MSGS, SUB, UNSUB}
+
+    private Type type;
+    private String user;
+    private String userSub;
+    private List<PropagatedMessage> batch;
+
+    public OutboundOp() {
+    }
+
+    static OutboundOp msgs(List<PropagatedMessage> batch) {
+        OutboundOp op = new OutboundOp();
+        op.type = Type.MSGS;
+        op.batch = batch;
+        return op;
+    }
+
+    static OutboundOp sub(String user, String userSub) {
+        OutboundOp op = new OutboundOp();
+        op.type = Type.SUB;
+        op.user = user;
+        op.userSub = userSub;
+        return op;
+    }
+
+    static OutboundOp unsub(String user, String userSub) {
+        OutboundOp op = new OutboundOp();
+        op.type = Type.UNSUB;
+        op.user = user;
+        op.userSub = userSub;
+        return op;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    public String getUserSub() {
+        return userSub;
+    }
+
+    public void setUserSub(String userSub) {
+        this.userSub = userSub;
+    }
+
+    public List<PropagatedMessage> getBatch() {
+        return batch;
+    }
+
+    public void setBatch(List<PropagatedMessage> batch) {
+        this.batch = batch;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboundOp [type=" + type + ", user=" + user + ", userSub=" + userSub + ", batch=" + batch + "]";
+    }
+}
@@ -0,0 +1,260 @@
+package sd2223.trab1.server.java;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import sd2223.trab1.api.java.Result;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Filas de saida, uma por dominio de destino, com as operacoes que ainda nao foram entregues.
+ * <p>
+ * Cada fila e guardada num ficheiro local (uma operacao JSON por linha) para sobreviver a uma
+ * falha do servidor. As filas sao esvaziadas por ordem, uma operacao de cada vez, e quando uma
+ * entrega falha a fila desse dominio volta a ser tentada mais tarde com backoff exponencial,
+ * sem bloquear nenhuma thread nem atrasar as entregas para os outros dominios.
+ * As entregas sao assincronas: nenhuma thread fica a espera da resposta (nem da descoberta) do destino.
+ */
+class OutboundQueue {
+
+    private static Logger Log = Logger.getLogger(OutboundQueue.class.getName());
+
+    private static final String FILE_EXTENSION = ".log";
+    private static final long INITIAL_BACKOFF = 500;
+    private static final long MAX_BACKOFF = 60000;
+
+    /**
+     * Numero de operacoes entregues apos o qual o ficheiro da fila e reescrito sem elas,
+     * para que nao cresca sem limite enquanto a fila nunca chega a esvaziar.
+     */
+    private static final int COMPACT_THRESHOLD = Integer.getInteger("feeds.outbox.compactThreshold", 128);
+
+    /**
+     * Entrega uma operacao num dominio.
+     */
+    interface Deliverer {
+        /**
+         * @return o resultado da entrega; TIMEOUT indica que a entrega deve ser tentada de novo
+         */
+        CompletableFuture<Result<Void>> deliver(String domain, OutboundOp op);
+    }
+
+    /**
+     * Fila de um dominio.
+     */
+    private static class DomainQueue {
+        final String domain;
+        final File file;
+        final Deque<OutboundOp> ops = new ArrayDeque<>();
+        boolean scheduled;
+        long backoff = INITIAL_BACKOFF;
+        // Operacoes entregues que ainda estao no ficheiro
+        int delivered;
+        // Aberto enquanto o ficheiro nao e reescrito, para nao abrir e fechar o ficheiro a cada operacao
+        BufferedWriter appender;
+
+        DomainQueue(String domain, File file) {
+            this.domain = domain;
+            this.file = file;
+        }
+    }
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final File dir;
+    private final Deliverer deliverer;
+    private final Executor executor;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "outbound-queue");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * String -> Domain; DomainQueue
+     */
+    private final Map<String, DomainQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * @param dir       diretoria onde as filas sao guardadas
+     * @param deliverer quem entrega as operacoes
+     * @param executor  executor onde as entregas sao feitas
+     */
+    OutboundQueue(File dir, Deliverer deliverer, Executor executor) {
+        this.dir = dir;
+        this.deliverer = deliverer;
+        this.executor = executor;
+        recover();
+    }
+
+    /**
+     * Acrescenta uma operacao a fila do dominio e agenda a sua entrega.
+     *
+     * @param domain dominio de destino
+     * @param op     operacao
+     */
+    void enqueue(String domain, OutboundOp op) {
+        DomainQueue q = queues.computeIfAbsent(domain, d -> new DomainQueue(d, fileOf(d)));
+        synchronized (q) {
+            append(q, op);
+            q.ops.addLast(op);
+            if (!q.scheduled) {
+                q.scheduled = true;
+                executor.execute(() -> drain(q));
+            }
+        }
+    }
+
+    /**
+     * Entrega a primeira operacao da fila; as seguintes sao entregues quando esta terminar,
+     * ate a fila ficar vazia ou uma entrega falhar.
+     */
+    private void drain(DomainQueue q) {
+        OutboundOp op;
+        synchronized (q) {
+            op = q.ops.peekFirst();
+            if (op == null) {
+                q.scheduled = false;
+                q.backoff = INITIAL_BACKOFF;
+                if (q.delivered > 0) rewrite(q);
+                return;
+            }
+        }
+
+        CompletableFuture<Result<Void>> delivery;
+        try {
+            delivery = deliverer.deliver(q.domain, op);
+        } catch (Exception x) {
+            delivery = CompletableFuture.failedFuture(x);
+        }
+        delivery.whenComplete((result, x) -> executor.execute(() -> delivered(q, result, x)));
+    }
+
+    /**
+     * Trata o fim da entrega da primeira operacao da fila e continua a esvaziar a fila.
+     */
+    private void delivered(DomainQueue q, Result<Void> result, Throwable x) {
+        if (x != null) {
+            Log.fine("Delivery to " + q.domain + " failed: " + x.getMessage());
+            result = Result.error(Result.ErrorCode.TIMEOUT);
+        }
+
+        synchronized (q) {
+            if (result.isOK() || result.error() != Result.ErrorCode.TIMEOUT) {
+                // Entregue, ou recusada pelo destino: tentar de novo nao muda nada
+                q.ops.pollFirst();
+                q.backoff = INITIAL_BACKOFF;
+                if (++q.delivered >= COMPACT_THRESHOLD) rewrite(q);
+            } else {
+                // Dominio inacessivel: tentar mais tarde, sem ocupar a thread
+                if (q.delivered > 0) rewrite(q);
+                long delay = q.backoff;
+                q.backoff = Math.min(q.backoff * 2, MAX_BACKOFF);
+                timer.schedule(() -> executor.execute(() -> drain(q)), delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        drain(q);
+    }
+
+    /**
+     * Carrega as filas guardadas em disco e agenda a sua entrega.
+     */
+    private void recover() {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.warning("Cannot create outbound queue directory: " + dir);
+            return;
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) return;
+
+        for (File f : files) {
+            String domain = f.getName().substring(0, f.getName().length() - FILE_EXTENSION.length());
+            DomainQueue q = new DomainQueue(domain, f);
+            try (var in = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null)
+                    if (!line.isBlank())
+                        q.ops.addLast(json.readValue(line, OutboundOp.class));
+            } catch (IOException x) {
+                // Uma linha incompleta no fim do ficheiro (escrita interrompida) e ignorada
+                Log.warning("Error reading outbound queue " + f + ": " + x.getMessage());
+            }
+            queues.put(domain, q);
+            if (!q.ops.isEmpty()) {
+                q.scheduled = true;
+                executor.execute(() -> drain(q));
+            }
+        }
+    }
+
+    /**
+     * Acrescenta uma operacao ao ficheiro da fila; a escrita e despejada logo para o ficheiro.
+     */
+    private void append(DomainQueue q, OutboundOp op) {
+        try {
+            if (q.appender == null)
+                q.appender = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(q.file, true), StandardCharsets.UTF_8));
+            q.appender.write(json.writeValueAsString(op));
+            q.appender.newLine();
+            q.appender.flush();
+        } catch (IOException x) {
+            Log.warning("Error writing outbound queue " + q.file + ": " + x.getMessage());
+            closeAppender(q);
+        }
+    }
+
+    /**
+     * Fecha o ficheiro aberto para acrescentar operacoes; volta a ser aberto na proxima.
+     */
+    private void closeAppender(DomainQueue q) {
+        if (q.appender == null) return;
+        try {
+            q.appender.close();
+        } catch (IOException x) {
+            Log.warning("Error closing outbound queue " + q.file + ": " + x.getMessage());
+        }
+        q.appender = null;
+    }
+
+    /**
+     * Reescreve o ficheiro da fila so com as operacoes ainda por entregar.
+     */
+    private void rewrite(DomainQueue q) {
+        q.delivered = 0;
+        // O ficheiro vai ser substituido: o que estava aberto deixaria de ser o da fila
+        closeAppender(q);
+        try {
+            if (q.ops.isEmpty()) {
+                Files.deleteIfExists(q.file.toPath());
+                return;
+            }
+            File tmp = new File(dir, q.file.getName() + ".tmp");
+            try (var out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                for (OutboundOp op : q.ops) {
+                    out.write(json.writeValueAsString(op));
+                    out.newLine();
+                }
+            }
+            Files.move(tmp.toPath(), q.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException x) {
+            Log.warning("Error rewriting outbound queue " + q.file + ": " + x.getMessage());
+        }
+    }
+
+    private File fileOf(String domain) {
+        return new File(dir, domain + FILE_EXTENSION);
+    }
+}
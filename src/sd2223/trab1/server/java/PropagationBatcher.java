@@ -0,0 +1,96 @@
+package sd2223.trab1.server.java;
+
+import sd2223.trab1.api.PropagatedMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agrupa as msgs propagadas para o mesmo dominio, enviando-as num unico pedido
+ * quando o lote atinge o tamanho maximo ou quando termina a janela de tempo.
+ */
+class PropagationBatcher {
+
+    /**
+     * Envia um lote de msgs para um dominio.
+     */
+    interface Sender {
+        void send(String domain, List<PropagatedMessage> batch);
+    }
+
+    private final int maxBatchSize;
+    private final long windowMs;
+    private final Sender sender;
+    private final Executor executor;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "propagation-batcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Lotes ainda por enviar.
+     * String -> Domain; List -> msgs para esse dominio
+     */
+    private final Map<String, List<PropagatedMessage>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxBatchSize numero maximo de msgs por lote
+     * @param windowMs     tempo maximo que uma msg fica a espera de ser enviada
+     * @param sender       quem envia os lotes
+     * @param executor     executor onde os lotes sao enviados
+     */
+    PropagationBatcher(int maxBatchSize, long windowMs, Sender sender, Executor executor) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.windowMs = Math.max(0, windowMs);
+        this.sender = sender;
+        this.executor = executor;
+    }
+
+    /**
+     * Acrescenta uma msg ao lote do dominio.
+     *
+     * @param domain dominio de destino
+     * @param msg    msg a propagar
+     */
+    void add(String domain, PropagatedMessage msg) {
+        List<List<PropagatedMessage>> full = new ArrayList<>(1);
+        boolean[] first = {false};
+
+        pending.compute(domain, (d, batch) -> {
+            if (batch == null) {
+                batch = new ArrayList<>();
+                first[0] = true;
+            }
+            batch.add(msg);
+            if (batch.size() >= maxBatchSize) {
+                full.add(batch);
+                return null;
+            }
+            return batch;
+        });
+
+        if (!full.isEmpty())
+            executor.execute(() -> sender.send(domain, full.get(0)));
+        else if (first[0])
+            timer.schedule(() -> flush(domain), windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Envia o lote pendente do dominio, se existir.
+     *
+     * @param domain dominio de destino
+     */
+    private void flush(String domain) {
+        List<PropagatedMessage> batch = pending.remove(domain);
+        if (batch != null)
+            executor.execute(() -> sender.send(domain, batch));
+    }
+}
@@ -0,0 +1,148 @@
+package sd2223.trab1.server.java;
+
+import sd2223.trab1.api.Message;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Feed de um user, indexado por id e por tempo de criacao.
+ * Permite obter as msgs mais recentes que um dado tempo em O(log n + k), sem percorrer o feed todo.
+ */
+class UserFeed {
+
+    /**
+     * Ordena as msgs por tempo de criacao e, em caso de empate, por id.
+     */
+    private static final Comparator<Message> BY_TIME = Comparator
+            .comparingLong(Message::getCreationTime)
+            .thenComparingLong(Message::getId);
+
+    /**
+     * Long -> id; Message
+     */
+    private final Map<Long, Message> byId = new ConcurrentHashMap<>();
+
+    /**
+     * Msgs ordenadas por (creationTime, id).
+     */
+    private final NavigableSet<Message> byTime = new ConcurrentSkipListSet<>(BY_TIME);
+
+    /**
+     * Coloca uma msg no feed, substituindo uma msg anterior com o mesmo id.
+     *
+     * @param msg mensagem
+     */
+    void put(Message msg) {
+        byId.compute(msg.getId(), (id, old) -> {
+            if (old != null) byTime.remove(old);
+            byTime.add(msg);
+            return msg;
+        });
+
+        // Acorda quem esta a espera de novas msgs neste feed
+        synchronized (this) {
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Devolve a msg com o id dado.
+     *
+     * @param mid id da msg
+     * @return a msg ou null se nao existe
+     */
+    Message get(long mid) {
+        return byId.get(mid);
+    }
+
+    /**
+     * Remove a msg com o id dado.
+     *
+     * @param mid id da msg
+     * @return true se a msg existia
+     */
+    boolean remove(long mid) {
+        boolean[] removed = {false};
+        byId.computeIfPresent(mid, (id, old) -> {
+            byTime.remove(old);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Remove as msgs com tempo de criacao inferior ou igual a time.
+     *
+     * @param time tempo
+     */
+    void trim(long time) {
+        for (Message msg : byTime.headSet(probe(time, Long.MAX_VALUE), true))
+            remove(msg.getId());
+    }
+
+    /**
+     * Devolve as msgs com tempo de criacao estritamente superior a time, por ordem cronologica.
+     *
+     * @param time tempo
+     * @return lista de msgs, potencialmente vazia
+     */
+    List<Message> since(long time) {
+        return new ArrayList<>(byTime.tailSet(probe(time, Long.MAX_VALUE), false));
+    }
+
+    /**
+     * Devolve, por ordem cronologica, no maximo limit msgs que ficam depois da posicao (time, afterId).
+     *
+     * @param time    tempo de criacao da posicao
+     * @param afterId id da posicao (Long.MAX_VALUE para ficar depois de todas as msgs com tempo time)
+     * @param limit   numero maximo de msgs
+     * @return lista de msgs, potencialmente vazia
+     */
+    List<Message> after(long time, long afterId, int limit) {
+        List<Message> list = new ArrayList<>(Math.min(limit, 64));
+        for (Message msg : byTime.tailSet(probe(time, afterId), false)) {
+            if (list.size() >= limit) break;
+            list.add(msg);
+        }
+        return list;
+    }
+
+    /**
+     * Espera, no maximo timeout ms, que existam msgs com tempo de criacao estritamente superior a time.
+     * Devolve logo se ja existirem.
+     *
+     * @param time    tempo
+     * @param timeout tempo maximo de espera em ms
+     * @return lista de msgs, vazia se o tempo de espera terminou sem novas msgs
+     */
+    List<Message> await(long time, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (this) {
+            List<Message> list = since(time);
+            long remaining = timeout;
+            while (list.isEmpty() && remaining > 0) {
+                this.wait(remaining);
+                list = since(time);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Msg "fantasma" usada para procurar a posicao (time, id) no indice temporal.
+     */
+    private static Message probe(long time, long id) {
+        Message probe = new Message();
+        probe.setCreationTime(time);
+        probe.setId(id);
+        return probe;
+    }
+}